@@ -4,26 +4,100 @@ import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.function.UnaryOperator;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 import javax.sql.DataSource;
 
+import org.fylia.jappa.core.cache.EntityCache;
+import org.fylia.jappa.core.cache.EntityCacheProvider;
+import org.fylia.jappa.core.cache.LruEntityCacheProvider;
+import org.fylia.jappa.core.dialect.Dialect;
+import org.fylia.jappa.core.id.PooledIdAllocator;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.DataRetrievalFailureException;
+import org.springframework.jdbc.CannotGetJdbcConnectionException;
+import org.springframework.jdbc.core.ArgumentPreparedStatementSetter;
 import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.ParameterizedPreparedStatementSetter;
+import org.springframework.jdbc.core.PreparedStatementCallback;
 import org.springframework.jdbc.core.PreparedStatementCreator;
 import org.springframework.jdbc.core.RowMapper;
 import org.springframework.jdbc.core.SqlProvider;
 import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceUtils;
+import org.springframework.jdbc.support.JdbcUtils;
+import org.springframework.jdbc.support.MetaDataAccessException;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 import org.springframework.util.Assert;
 
 /**
- * Abstract Dao for Spring Jdbc
+ * Abstract Dao for Spring Jdbc.
+ * The writes run in a read-write transaction. The generated read methods join a running transaction but do not
+ * start one, so they hold no connection of the dataSource when a read dataSource is set: outside a read-write
+ * transaction they read on that dataSource (see {@link #setReadDataSource(DataSource)}).
  * @author fylia
  */
 @Transactional
 public abstract class AbstractSpringJdbcDao {
+    /**
+     * Default number of statements sent to the database in one batch
+     */
+    public static final int DEFAULT_BATCH_SIZE = 500;
+    /**
+     * Default number of rows fetched from the database at once by the streaming queries
+     */
+    public static final int DEFAULT_FETCH_SIZE = 500;
+    /**
+     * Default maximum number of connections used at once by a parallel scan
+     */
+    public static final int DEFAULT_SCAN_CONCURRENCY = 4;
+    /**
+     * Sizes of the IN lists used to query by ids. A chunk of ids is padded up to the next size,
+     * so only a few distinct statements are prepared (and cached by the database and the statement pool).
+     */
+    protected static final int[] IN_LIST_SIZES = {1, 4, 16, 64, 256};
+    /**
+     * Providers of the second level caches used when none is set, by dataSource
+     */
+    private static final Map<DataSource, EntityCacheProvider> DEFAULT_ENTITY_CACHE_PROVIDERS = Collections.synchronizedMap(new WeakHashMap<>());
+    /**
+     * Key of the caches written by the running transaction, bound to it
+     */
+    private static final Object WRITTEN_CACHES = new Object();
+
     private JdbcTemplate jdbcTemplate;
     private NamedParameterJdbcTemplate namedParameterJdbcTemplate;
+    private JdbcTemplate readJdbcTemplate;
+    private int batchSize = DEFAULT_BATCH_SIZE;
+    private int fetchSize = DEFAULT_FETCH_SIZE;
+    private int scanConcurrency = DEFAULT_SCAN_CONCURRENCY;
+    private boolean identityMapEnabled;
+    private EntityCacheProvider entityCacheProvider;
+    private volatile Dialect dialect;
+    private volatile boolean dialectResolved;
+    private final Map<Class<?>, AbstractSpringJdbcDao> relatedDaos = new ConcurrentHashMap<>();
+    private final Map<String, PooledIdAllocator> idAllocators = new ConcurrentHashMap<>();
 
     /**
      * Initialize the dataSource
@@ -33,16 +107,728 @@ public abstract class AbstractSpringJdbcDao {
     public void setDataSource(DataSource dataSource) {
         this.jdbcTemplate = new JdbcTemplate(dataSource);
         this.namedParameterJdbcTemplate = new NamedParameterJdbcTemplate(jdbcTemplate);
+        relatedDaos.clear();
+        idAllocators.clear();
+        if (dialect == null) {
+            dialectResolved = false;
+        }
+    }
+
+    /**
+     * Route the reads to another dataSource, e.g. a replica of the database, the writes keep going to the dataSource.
+     * Reads in a read-write transaction still use the dataSource of the transaction, so they see its changes.
+     * @param readDataSource the dataSource for the reads, null to read from the dataSource
+     */
+    public void setReadDataSource(DataSource readDataSource) {
+        this.readJdbcTemplate = readDataSource == null ? null : new JdbcTemplate(readDataSource);
+        relatedDaos.clear();
     }
 
     protected JdbcTemplate getJdbcTemplate() {
         return jdbcTemplate;
     }
+
+    /**
+     * @return the JdbcTemplate for the reads: on the read dataSource when one is set,
+     * unless a read-write transaction is running
+     */
+    protected JdbcTemplate getReadJdbcTemplate() {
+        if (readJdbcTemplate == null || TransactionSynchronizationManager.isActualTransactionActive()
+                && !TransactionSynchronizationManager.isCurrentTransactionReadOnly()) {
+            return jdbcTemplate;
+        }
+        return readJdbcTemplate;
+    }
     
     protected NamedParameterJdbcTemplate getNamedParameterJdbcTemplate() {
         return namedParameterJdbcTemplate;
     }
 
+    /**
+     * Get a dao for another type, e.g. to load referenced rows. The dao is created once
+     * and shares the JdbcTemplates, the batch and fetch sizes, the identity map setting and the cache provider of this dao.
+     * @param <D> the type of the dao
+     * @param daoClass the class of the dao
+     * @param factory creates the dao
+     * @return the dao
+     */
+    protected <D extends AbstractSpringJdbcDao> D getRelatedDao(Class<D> daoClass, Supplier<D> factory) {
+        return daoClass.cast(relatedDaos.computeIfAbsent(daoClass, c -> {
+            final AbstractSpringJdbcDao dao = factory.get();
+            dao.jdbcTemplate = jdbcTemplate;
+            dao.namedParameterJdbcTemplate = namedParameterJdbcTemplate;
+            dao.readJdbcTemplate = readJdbcTemplate;
+            dao.batchSize = batchSize;
+            dao.fetchSize = fetchSize;
+            dao.scanConcurrency = scanConcurrency;
+            dao.identityMapEnabled = identityMapEnabled;
+            dao.entityCacheProvider = entityCacheProvider;
+            dao.dialect = dialect;
+            dao.dialectResolved = dialectResolved;
+            return dao;
+        }));
+    }
+
+    /**
+     * Get the dialect of the database, detected from the meta data of the dataSource unless it was set
+     * @return the dialect, null if the database is not supported
+     */
+    public Dialect getDialect() {
+        if (!dialectResolved) {
+            try {
+                dialect = Dialect.forDatabaseProductName(
+                        (String) JdbcUtils.extractDatabaseMetaData(jdbcTemplate.getDataSource(), "getDatabaseProductName"));
+            } catch (MetaDataAccessException e) {
+                dialect = null;
+            }
+            dialectResolved = true;
+        }
+        return dialect;
+    }
+
+    /**
+     * Set the dialect of the database instead of detecting it
+     * @param dialect the dialect
+     */
+    public void setDialect(Dialect dialect) {
+        this.dialect = dialect;
+        this.dialectResolved = true;
+        relatedDaos.clear();
+    }
+
+    /**
+     * @param sequenceName the name of a sequence
+     * @return the query reading the next value of the sequence in the dialect of the database
+     */
+    protected String nextSequenceValueSql(String sequenceName) {
+        final Dialect databaseDialect = getDialect();
+        return databaseDialect == null ? Dialect.H2.nextSequenceValueSql(sequenceName) : databaseDialect.nextSequenceValueSql(sequenceName);
+    }
+
+    /**
+     * Get the allocator of ids for a generator, created once per dao
+     * @param generator the name of the generator (sequence or table row)
+     * @param factory creates the allocator for the dataSource of this dao
+     * @return the allocator
+     */
+    protected PooledIdAllocator getIdAllocator(String generator, Function<DataSource, PooledIdAllocator> factory) {
+        return idAllocators.computeIfAbsent(generator, g -> factory.apply(jdbcTemplate.getDataSource()));
+    }
+
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    /**
+     * Set the number of statements sent to the database in one batch by the *All methods
+     * @param batchSize the batch size, must be positive
+     */
+    public void setBatchSize(int batchSize) {
+        Assert.isTrue(batchSize > 0, "Batch size must be positive");
+        this.batchSize = batchSize;
+        relatedDaos.clear();
+    }
+
+    public int getFetchSize() {
+        return fetchSize;
+    }
+
+    /**
+     * Set the number of rows fetched from the database at once by the streaming queries
+     * @param fetchSize the fetch size, 0 to use the default of the driver
+     */
+    public void setFetchSize(int fetchSize) {
+        Assert.isTrue(fetchSize >= 0, "Fetch size must not be negative");
+        this.fetchSize = fetchSize;
+        relatedDaos.clear();
+    }
+
+    public int getScanConcurrency() {
+        return scanConcurrency;
+    }
+
+    /**
+     * Set the maximum number of id ranges read at once, each on its own connection, by the parallel scans
+     * @param scanConcurrency the maximum number of connections, must be positive
+     */
+    public void setScanConcurrency(int scanConcurrency) {
+        Assert.isTrue(scanConcurrency > 0, "Scan concurrency must be positive");
+        this.scanConcurrency = scanConcurrency;
+        relatedDaos.clear();
+    }
+
+    public boolean isIdentityMapEnabled() {
+        return identityMapEnabled;
+    }
+
+    /**
+     * Enable the {@link IdentityMap} bound to the running transaction for this dao
+     * @param identityMapEnabled if the identity map should be used
+     */
+    public void setIdentityMapEnabled(boolean identityMapEnabled) {
+        this.identityMapEnabled = identityMapEnabled;
+        relatedDaos.clear();
+    }
+
+    /**
+     * Get the identity map of the running transaction, binding it when the identity map is enabled for this dao
+     * @return the identity map, null if none is bound
+     */
+    protected IdentityMap getIdentityMap() {
+        return identityMapEnabled ? IdentityMap.bindToTransaction() : IdentityMap.current();
+    }
+
+    /**
+     * @return the provider of the second level caches, the default one of the dataSource when none was set
+     */
+    public EntityCacheProvider getEntityCacheProvider() {
+        if (entityCacheProvider != null) {
+            return entityCacheProvider;
+        }
+        return DEFAULT_ENTITY_CACHE_PROVIDERS.computeIfAbsent(jdbcTemplate.getDataSource(), d -> new LruEntityCacheProvider());
+    }
+
+    /**
+     * Set the provider of the second level caches of the entities annotated with {@link org.fylia.jappa.core.cache.Cached}.
+     * By default the daos of a dataSource share the caches of a {@link LruEntityCacheProvider}, the daos of
+     * other dataSources (e.g. other databases) do not.
+     * @param entityCacheProvider the provider
+     */
+    @Autowired(required = false)
+    public void setEntityCacheProvider(EntityCacheProvider entityCacheProvider) {
+        Assert.notNull(entityCacheProvider, "Entity cache provider must not be null");
+        this.entityCacheProvider = entityCacheProvider;
+        relatedDaos.clear();
+    }
+
+    /**
+     * @param <K> the type of the id
+     * @param <V> the type of the entity
+     * @param entityType the class of the entity
+     * @param maxSize the maximum number of rows kept in the cache
+     * @return the second level cache of an entity
+     */
+    protected <K, V> EntityCache<K, V> getEntityCache(Class<V> entityType, int maxSize) {
+        return getEntityCacheProvider().getCache(entityType, maxSize);
+    }
+
+    /**
+     * Get rows by id from a second level cache, loading (and caching) the rows that are not cached.
+     * The loaded rows are not cached once the running transaction wrote rows of the cache: they may not be committed.
+     * @param <K> the type of the ids
+     * @param <T> the type of the rows
+     * @param ids the ids, null values and duplicates are ignored
+     * @param cache the cache
+     * @param loader loads the rows that are not cached
+     * @param fromCache converts a cached row to the row to return (e.g. a copy)
+     * @param toCache converts a loaded row to the row to cache (e.g. a copy)
+     * @return the rows found, by id, in the order of the given ids
+     */
+    protected <K, T> Map<K, T> readThrough(Collection<K> ids, EntityCache<K, T> cache,
+            Function<Collection<K>, Map<K, T>> loader, UnaryOperator<T> fromCache, UnaryOperator<T> toCache) {
+        final List<K> distinctIds = distinctIds(ids);
+        final Map<K, T> found = new HashMap<>();
+        final List<K> missing = new ArrayList<>();
+        for (K id : distinctIds) {
+            final T cached = cache.get(id);
+            if (cached != null) {
+                found.put(id, fromCache.apply(cached));
+            } else {
+                missing.add(id);
+            }
+        }
+        if (!missing.isEmpty()) {
+            final boolean cacheLoaded = !writtenCaches(false).contains(cache);
+            for (Map.Entry<K, T> loaded : loader.apply(missing).entrySet()) {
+                if (cacheLoaded) {
+                    cache.put(loaded.getKey(), toCache.apply(loaded.getValue()));
+                }
+                found.put(loaded.getKey(), loaded.getValue());
+            }
+        }
+        final Map<K, T> result = new LinkedHashMap<>();
+        for (K id : distinctIds) {
+            final T row = found.get(id);
+            if (row != null) {
+                result.put(id, row);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Remove written rows from a second level cache. When a transaction is running, the rows are removed
+     * again when it completes, so a read of the old rows by another transaction in the mean time is not kept,
+     * and the transaction does not cache the rows it reads from then on.
+     * @param <K> the type of the id
+     * @param cache the cache
+     * @param ids the ids of the rows
+     */
+    protected static <K> void invalidate(EntityCache<K, ?> cache, Collection<K> ids) {
+        if (ids.isEmpty()) {
+            return;
+        }
+        ids.forEach(cache::evict);
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            writtenCaches(true).add(cache);
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+                @Override
+                public void afterCompletion(int status) {
+                    ids.forEach(cache::evict);
+                }
+            });
+        }
+    }
+
+    /**
+     * Put a loaded row in a second level cache, unless the running transaction wrote rows of the cache:
+     * the row may not be committed.
+     * @param <K> the type of the id
+     * @param <T> the type of the row
+     * @param cache the cache
+     * @param id the id of the row
+     * @param row the row to cache
+     */
+    protected static <K, T> void cacheLoaded(EntityCache<K, T> cache, K id, T row) {
+        if (!writtenCaches(false).contains(cache)) {
+            cache.put(id, row);
+        }
+    }
+
+    /**
+     * @param bind if the set should be bound to the running transaction when none is bound yet
+     * @return the caches written by the running transaction, empty if none
+     */
+    @SuppressWarnings("unchecked")
+    private static Set<EntityCache<?, ?>> writtenCaches(boolean bind) {
+        final Set<EntityCache<?, ?>> written = (Set<EntityCache<?, ?>>) TransactionSynchronizationManager.getResource(WRITTEN_CACHES);
+        if (written != null || !bind) {
+            return written == null ? Collections.emptySet() : written;
+        }
+        final Set<EntityCache<?, ?>> caches = Collections.newSetFromMap(new IdentityHashMap<>());
+        TransactionSynchronizationManager.bindResource(WRITTEN_CACHES, caches);
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+            @Override
+            public void afterCompletion(int status) {
+                TransactionSynchronizationManager.unbindResourceIfPossible(WRITTEN_CACHES);
+            }
+        });
+        return caches;
+    }
+
+    /**
+     * Execute a query and stream the mapped rows from a forward only, read only cursor,
+     * fetching {@link #getFetchSize()} rows at a time. The rows are only read when the stream is consumed.
+     * <p>
+     * The stream holds a connection (unless it takes part in a running transaction) until all rows
+     * have been read or the stream is closed, so it should be used in a try-with-resources block.
+     * Outside of a transaction that connection is not bound to the thread, the methods returning the stream
+     * should not start a transaction either (e.g. <code>@Transactional(propagation = Propagation.SUPPORTS)</code>):
+     * it would end, and close the connection, before the rows are read.
+     * Note that some drivers (e.g. PostgreSQL) only use a cursor when the connection is not in auto commit mode.
+     * @param <T> the type of the mapped rows
+     * @param sql the query
+     * @param rowMapper the mapper for the rows
+     * @param args the arguments of the query
+     * @return the stream of mapped rows
+     */
+    protected <T> Stream<T> queryForStream(String sql, RowMapper<T> rowMapper, Object... args) {
+        final JdbcTemplate readTemplate = getReadJdbcTemplate();
+        final DataSource dataSource = readTemplate.getDataSource();
+        final boolean transactional = TransactionSynchronizationManager.isActualTransactionActive();
+        final Connection con = transactional ? DataSourceUtils.getConnection(dataSource) : openConnection(dataSource);
+        final Runnable releaseConnection = () -> {
+            if (transactional) {
+                DataSourceUtils.releaseConnection(con, dataSource);
+            } else {
+                JdbcUtils.closeConnection(con);
+            }
+        };
+        PreparedStatement ps = null;
+        ResultSet rs = null;
+        try {
+            ps = con.prepareStatement(sql, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+            if (fetchSize > 0) {
+                ps.setFetchSize(fetchSize);
+            }
+            new ArgumentPreparedStatementSetter(args).setValues(ps);
+            rs = ps.executeQuery();
+        } catch (SQLException e) {
+            JdbcUtils.closeResultSet(rs);
+            JdbcUtils.closeStatement(ps);
+            releaseConnection.run();
+            throw readTemplate.getExceptionTranslator().translate("queryForStream", sql, e);
+        }
+        final ResultSet resultSet = rs;
+        final PreparedStatement statement = ps;
+        final ResultSetSpliterator<T> spliterator = new ResultSetSpliterator<>(resultSet, rowMapper,
+                readTemplate.getExceptionTranslator(), sql, () -> {
+                    JdbcUtils.closeResultSet(resultSet);
+                    JdbcUtils.closeStatement(statement);
+                    releaseConnection.run();
+                });
+        return StreamSupport.stream(spliterator, false).onClose(spliterator::close);
+    }
+
+    /**
+     * Get a connection not bound to the thread, so it is not released with a transaction scope
+     * (e.g. of a method with propagation SUPPORTS) it was obtained in
+     * @param dataSource the dataSource
+     * @return the connection, to be closed by the caller
+     */
+    private static Connection openConnection(DataSource dataSource) {
+        try {
+            return dataSource.getConnection();
+        } catch (SQLException e) {
+            throw new CannotGetJdbcConnectionException("Could not get JDBC Connection", e);
+        }
+    }
+
+    /**
+     * Read all rows of a table with an integral id as a parallel stream: the id range, read with a min/max query,
+     * is split in partitions by an {@link IdRangeSpliterator} and each partition is read by a query of its own,
+     * on its own connection. The partitions are read by a {@link PrefetchingSpliterator}, at most
+     * {@link #getScanConcurrency()} at once, on threads of their own, and keep at most {@link #getFetchSize()} rows
+     * not consumed yet; the rows are passed on in the order of their ids.
+     * <p>
+     * The partitions are read on other connections than the one of a running transaction, so they would not see
+     * its writes: the scan cannot take part in a transaction. The stream should be closed, to cancel the reads
+     * not done yet when it is not read until the end.
+     * @param <T> the type of the mapped rows
+     * @param idRangeSql the query selecting the lowest and the highest id
+     * @param rangeSql the query selecting the rows between two ids (included), ordered by id
+     * @param rowMappers creates the mapper for the rows of a partition, partitions read at once do not share a mapper
+     * @param partitions the number of partitions to split the id range in
+     * @return the parallel stream of mapped rows
+     * @throws IllegalStateException when a transaction is running
+     */
+    protected <T> Stream<T> queryIdRanges(String idRangeSql, String rangeSql, Supplier<? extends RowMapper<T>> rowMappers, int partitions) {
+        Assert.isTrue(partitions > 0, "The number of partitions must be positive");
+        Assert.state(!TransactionSynchronizationManager.isActualTransactionActive(),
+                "A parallel scan reads on connections of its own, it cannot take part in a running transaction");
+        final JdbcTemplate readTemplate = getReadJdbcTemplate();
+        final long[] idRange = readTemplate.query(idRangeSql, (ResultSet rs) -> {
+            if (!rs.next()) {
+                return null;
+            }
+            final long min = rs.getLong(1);
+            return rs.wasNull() ? null : new long[] {min, rs.getLong(2)};
+        });
+        if (idRange == null) {
+            return Stream.empty();
+        }
+        // unsigned, the id range may be wider than Long.MAX_VALUE
+        final long rangeSize = partitions == 1 ? -1L : Long.divideUnsigned(idRange[1] - idRange[0], partitions) + 1;
+        final List<IdRangeSpliterator<T>> ranges = new IdRangeSpliterator<T>(idRange[0], idRange[1], rangeSize, (from, to, action) -> {
+            final RowMapper<T> rowMapper = rowMappers.get();
+            final int[] rowNum = {0};
+            readTemplate.query(rangeSql, (ResultSet rs) -> action.accept(rowMapper.mapRow(rs, rowNum[0]++)), from, to);
+        }).splitRanges();
+        final PrefetchingSpliterator<T> spliterator = new PrefetchingSpliterator<>(ranges, scanConcurrency,
+                fetchSize > 0 ? fetchSize : DEFAULT_FETCH_SIZE);
+        return StreamSupport.stream(spliterator, true).onClose(spliterator::close);
+    }
+
+    /**
+     * Build the queries selecting rows by a list of ids, one for each of the {@link #IN_LIST_SIZES}.
+     * A composite id is matched with a row value predicate: <code>(col1, col2) in ((?, ?), (?, ?))</code>
+     * @param select the select statement, without where clause
+     * @param idColumns the comma separated id columns
+     * @param idColumnCount the number of id columns
+     * @return the queries, in the order of {@link #IN_LIST_SIZES}
+     */
+    protected static String[] inListQueries(String select, String idColumns, int idColumnCount) {
+        final StringBuilder idParams = new StringBuilder("?");
+        for (int i = 1; i < idColumnCount; i++) {
+            idParams.append(", ?");
+        }
+        final String idValue = idColumnCount == 1 ? "?" : "(" + idParams + ")";
+        final String[] queries = new String[IN_LIST_SIZES.length];
+        for (int s = 0; s < IN_LIST_SIZES.length; s++) {
+            final StringBuilder sql = new StringBuilder(select).append(" where ")
+                    .append(idColumnCount == 1 ? idColumns : "(" + idColumns + ")").append(" in (").append(idValue);
+            for (int i = 1; i < IN_LIST_SIZES[s]; i++) {
+                sql.append(", ").append(idValue);
+            }
+            queries[s] = sql.append(")").toString();
+        }
+        return queries;
+    }
+
+    /**
+     * Compose a row mapper with the mapper of a reference read from the same (joined) row.
+     * The reference is only mapped when the row mapper found its id.
+     * @param <T> the type of the mapped rows
+     * @param <R> the type of the reference
+     * @param rowMapper the mapper for the row
+     * @param referenceMapper the mapper for the reference
+     * @param getter gets the reference (holding only its id) of a mapped row
+     * @param setter sets the mapped reference on a mapped row
+     * @return the composed mapper
+     */
+    protected static <T, R> RowMapper<T> joinMapper(RowMapper<T> rowMapper, RowMapper<R> referenceMapper,
+            Function<T, R> getter, BiConsumer<T, R> setter) {
+        return (rs, rowNum) -> {
+            final T row = rowMapper.mapRow(rs, rowNum);
+            if (getter.apply(row) != null) {
+                setter.accept(row, referenceMapper.mapRow(rs, rowNum));
+            }
+            return row;
+        };
+    }
+
+    /**
+     * Query the rows for a collection of ids, in chunks of at most the largest of the {@link #IN_LIST_SIZES}.
+     * Each chunk is padded (repeating its last id) up to the next IN list size, so the queries can be reused.
+     * @param <K> the type of the ids
+     * @param <T> the type of the mapped rows
+     * @param ids the ids, null values and duplicates are ignored
+     * @param inListQueries the queries built by {@link #inListQueries(String, String, int)}
+     * @param idColumnCount the number of id columns
+     * @param idSetter sets the values of an id on the statement
+     * @param rowMapper the mapper for the rows
+     * @param idGetter gets the id of a mapped row
+     * @return the rows found, by id, in the order of the given ids
+     */
+    protected <K, T> Map<K, T> queryByIds(Collection<K> ids, String[] inListQueries, int idColumnCount,
+            IdParameterSetter<K> idSetter, RowMapper<T> rowMapper, Function<T, K> idGetter) {
+        final List<K> distinctIds = distinctIds(ids);
+        final Map<K, T> found = new HashMap<>();
+        for (T row : queryInChunks(distinctIds, inListQueries, idColumnCount, idSetter, rowMapper)) {
+            found.put(idGetter.apply(row), row);
+        }
+        final Map<K, T> result = new LinkedHashMap<>();
+        for (K id : distinctIds) {
+            final T row = found.get(id);
+            if (row != null) {
+                result.put(id, row);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Query the rows referring to a collection of ids (e.g. the children of a list of parents by foreign key),
+     * in chunks like {@link #queryByIds(Collection, String[], int, IdParameterSetter, RowMapper, Function)}.
+     * @param <K> the type of the ids
+     * @param <T> the type of the mapped rows
+     * @param ids the ids, null values and duplicates are ignored
+     * @param inListQueries the queries built by {@link #inListQueries(String, String, int)} on the referring columns
+     * @param idColumnCount the number of referring columns
+     * @param idSetter sets the values of an id on the statement
+     * @param rowMapper the mapper for the rows
+     * @param keyGetter gets the referred id of a mapped row
+     * @return the rows found, grouped by id, in the order of the given ids (an empty list for an id without rows)
+     */
+    protected <K, T> Map<K, List<T>> queryGroupedByIds(Collection<K> ids, String[] inListQueries, int idColumnCount,
+            IdParameterSetter<K> idSetter, RowMapper<T> rowMapper, Function<T, K> keyGetter) {
+        final List<K> distinctIds = distinctIds(ids);
+        final Map<K, List<T>> result = new LinkedHashMap<>();
+        for (K id : distinctIds) {
+            result.put(id, new ArrayList<>());
+        }
+        for (T row : queryInChunks(distinctIds, inListQueries, idColumnCount, idSetter, rowMapper)) {
+            final List<T> group = result.get(keyGetter.apply(row));
+            if (group != null) {
+                group.add(row);
+            }
+        }
+        return result;
+    }
+
+    private static <K> List<K> distinctIds(Collection<K> ids) {
+        final List<K> distinctIds = new ArrayList<>(new LinkedHashSet<>(ids));
+        distinctIds.removeIf(Objects::isNull);
+        return distinctIds;
+    }
+
+    private <K, T> List<T> queryInChunks(List<K> distinctIds, String[] inListQueries, int idColumnCount,
+            IdParameterSetter<K> idSetter, RowMapper<T> rowMapper) {
+        final int maxChunkSize = IN_LIST_SIZES[IN_LIST_SIZES.length - 1];
+        final List<T> rows = new ArrayList<>();
+        for (int start = 0; start < distinctIds.size(); start += maxChunkSize) {
+            final List<K> chunk = distinctIds.subList(start, Math.min(start + maxChunkSize, distinctIds.size()));
+            int sizeIndex = 0;
+            while (IN_LIST_SIZES[sizeIndex] < chunk.size()) {
+                sizeIndex++;
+            }
+            final int inListSize = IN_LIST_SIZES[sizeIndex];
+            rows.addAll(getReadJdbcTemplate().query(inListQueries[sizeIndex],
+                prepareStatement -> {
+                    for (int i = 0; i < inListSize; i++) {
+                        idSetter.setIdParameters(prepareStatement, 1 + i * idColumnCount, chunk.get(Math.min(i, chunk.size() - 1)));
+                    }
+                },
+                rowMapper));
+        }
+        return rows;
+    }
+
+    /**
+     * Load a reference of a list of items with one query, instead of one query per item,
+     * and set the loaded instances on the items. Items referring to the same id share the same instance.
+     * A reference that is not found is left as it is.
+     * @param <T> the type of the items
+     * @param <K> the type of the id of the reference
+     * @param <R> the type of the reference
+     * @param items the items
+     * @param idGetter gets the id of the reference from an item, null if the item has no reference
+     * @param loader loads the references by id
+     * @param setter sets the loaded reference on an item
+     */
+    protected <T, K, R> void fetchReference(Collection<T> items, Function<T, K> idGetter,
+            Function<Collection<K>, Map<K, R>> loader, BiConsumer<T, R> setter) {
+        final Set<K> ids = new LinkedHashSet<>();
+        for (T item : items) {
+            ids.add(idGetter.apply(item));
+        }
+        ids.remove(null);
+        if (ids.isEmpty()) {
+            return;
+        }
+        final Map<K, R> references = loader.apply(ids);
+        for (T item : items) {
+            final K id = idGetter.apply(item);
+            final R reference = id == null ? null : references.get(id);
+            if (reference != null) {
+                setter.accept(item, reference);
+            }
+        }
+    }
+
+    /**
+     * Load a one to many collection of a list of items with one query (per chunk of ids),
+     * instead of one query per item, and set the loaded collections on the items.
+     * @param <T> the type of the items
+     * @param <K> the type of the id of the items
+     * @param <C> the type of the elements of the collection
+     * @param items the items
+     * @param idGetter gets the id of an item
+     * @param loader loads the elements grouped by the id of the item they refer to
+     * @param setter sets the loaded collection on an item
+     */
+    protected <T, K, C> void fetchCollection(Collection<T> items, Function<T, K> idGetter,
+            Function<Collection<K>, Map<K, List<C>>> loader, BiConsumer<T, List<C>> setter) {
+        final Set<K> ids = new LinkedHashSet<>();
+        for (T item : items) {
+            ids.add(idGetter.apply(item));
+        }
+        ids.remove(null);
+        if (ids.isEmpty()) {
+            return;
+        }
+        final Map<K, List<C>> collections = loader.apply(ids);
+        for (T item : items) {
+            final K id = idGetter.apply(item);
+            if (id != null) {
+                setter.accept(item, collections.get(id));
+            }
+        }
+    }
+
+    /**
+     * Execute a statement for each of the items, in batches of {@link #getBatchSize()}
+     * @param <T> the type of the items
+     * @param sql the sql statement
+     * @param items the items
+     * @param pss sets the parameters of one item on the statement
+     */
+    protected <T> void batchUpdate(String sql, Collection<T> items, ParameterizedPreparedStatementSetter<T> pss) {
+        if (!items.isEmpty()) {
+            getJdbcTemplate().batchUpdate(sql, items, batchSize, pss);
+        }
+    }
+
+    /**
+     * Execute an insert statement for an item and hand the generated key back to the item.
+     * @param <T> the type of the item
+     * @param sql the insert statement
+     * @param item the item
+     * @param pss sets the parameters of the item on the statement
+     * @param keySetter sets the generated key on the item
+     * @return the item
+     */
+    protected <T> T insertWithGeneratedKey(String sql, T item, ParameterizedPreparedStatementSetter<T> pss,
+            GeneratedKeySetter<T> keySetter) {
+        getJdbcTemplate().execute(new SimplePreparedStatementCreator(sql, true, ps -> pss.setValues(ps, item)),
+            (PreparedStatementCallback<Void>) ps -> {
+                ps.executeUpdate();
+                try (ResultSet keys = ps.getGeneratedKeys()) {
+                    if (keys == null || !keys.next()) {
+                        throw new DataRetrievalFailureException("Driver returned no generated key for: "+sql);
+                    }
+                    keySetter.setGeneratedKey(item, keys);
+                }
+                return null;
+            });
+        return item;
+    }
+
+    /**
+     * Execute an insert statement for each of the items, in batches of {@link #getBatchSize()},
+     * and hand the generated keys back to the items.
+     * @param <T> the type of the items
+     * @param sql the insert statement
+     * @param items the items
+     * @param pss sets the parameters of one item on the statement
+     * @param keySetter sets the generated key on one item
+     */
+    protected <T> void batchInsert(String sql, List<T> items, ParameterizedPreparedStatementSetter<T> pss,
+            GeneratedKeySetter<T> keySetter) {
+        if (items.isEmpty()) {
+            return;
+        }
+        getJdbcTemplate().execute(new SimplePreparedStatementCreator(sql, true, null),
+            (PreparedStatementCallback<Void>) ps -> {
+                for (int start = 0; start < items.size(); start += batchSize) {
+                    final List<T> batch = items.subList(start, Math.min(start + batchSize, items.size()));
+                    for (T item : batch) {
+                        pss.setValues(ps, item);
+                        ps.addBatch();
+                    }
+                    ps.executeBatch();
+                    try (ResultSet keys = ps.getGeneratedKeys()) {
+                        for (T item : batch) {
+                            if (keys == null || !keys.next()) {
+                                throw new DataRetrievalFailureException("Driver returned less generated keys than inserted rows for: "+sql);
+                            }
+                            keySetter.setGeneratedKey(item, keys);
+                        }
+                    }
+                }
+                return null;
+            });
+    }
+
+    /**
+     * Sets the generated key, read from the generated keys {@link ResultSet}, on an item
+     * @param <T> the type of the item
+     */
+    public interface GeneratedKeySetter<T> {
+        /**
+         * Set the key of the current row of the generated keys on the item
+         * @param item the inserted item
+         * @param keys the generated keys, positioned on the row of the item
+         * @throws SQLException in case of trouble
+         */
+        void setGeneratedKey(T item, ResultSet keys) throws SQLException;
+    }
+
+    /**
+     * Sets the values of an id as parameters on a {@link PreparedStatement}
+     * @param <K> the type of the id
+     */
+    public interface IdParameterSetter<K> {
+        /**
+         * Set the values of the id
+         * @param ps the prepared statement
+         * @param offset the index of the parameter for the first id column
+         * @param id the id
+         * @throws SQLException in case of trouble
+         */
+        void setIdParameters(PreparedStatement ps, int offset, K id) throws SQLException;
+    }
+
     /**
      * Simple adapter for PreparedStatementCreator, allowing to use a plain SQL statement.
      */
@@ -59,6 +845,7 @@ public abstract class AbstractSpringJdbcDao {
             void setParameters(PreparedStatement ps) throws SQLException;
         }
         private final String sql;
+        private final boolean returnGeneratedKeys;
         private final ParameterSetter ps;
         /**
          * Constructor
@@ -66,14 +853,27 @@ public abstract class AbstractSpringJdbcDao {
          * @param ps the (optional) parameterSetter
          */
         public SimplePreparedStatementCreator(String sql, ParameterSetter ps) {
+            this(sql, false, ps);
+        }
+
+        /**
+         * Constructor
+         * @param sql the sql statement
+         * @param returnGeneratedKeys if the statement should return the generated keys
+         * @param ps the (optional) parameterSetter
+         */
+        public SimplePreparedStatementCreator(String sql, boolean returnGeneratedKeys, ParameterSetter ps) {
             Assert.notNull(sql, "SQL must not be null");
             this.sql = sql;
+            this.returnGeneratedKeys = returnGeneratedKeys;
             this.ps=ps;
         }
 
         @Override
         public PreparedStatement createPreparedStatement(Connection con) throws SQLException {
-            final PreparedStatement prepareStatement = con.prepareStatement(this.sql);
+            final PreparedStatement prepareStatement = returnGeneratedKeys
+                    ? con.prepareStatement(this.sql, Statement.RETURN_GENERATED_KEYS)
+                    : con.prepareStatement(this.sql);
             if (ps!=null) {
                 ps.setParameters(prepareStatement);
             }
@@ -0,0 +1,89 @@
+package org.fylia.jappa.core;
+
+import java.lang.ref.WeakReference;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Resolves a fixed list of column labels to their index in a {@link ResultSet}.
+ * The resolution is done once per ResultSet, from its meta data, so the mappers
+ * can read the columns of every row by index instead of by label.
+ * <p>
+ * The resolver can be shared between threads: each thread keeps the resolutions of the last few ResultSets
+ * it read, so threads reading in parallel (or a thread alternating between ResultSets) do not evict
+ * each other's resolutions. As these are kept per resolver and thread, a resolver should live as long as
+ * its mapper is reused, e.g. the generated daos keep a projection mapper per set of selected properties.
+ * @author fylia
+ */
+public final class ColumnIndexResolver {
+    /**
+     * Number of ResultSets whose resolution is kept per thread
+     */
+    private static final int RESOLVED_PER_THREAD = 4;
+    private final String[] columnLabels;
+    private final ThreadLocal<ResolvedIndexes[]> lastResolved = new ThreadLocal<>();
+
+    /**
+     * Holder for the indexes resolved for one ResultSet
+     */
+    private static final class ResolvedIndexes {
+        private final WeakReference<ResultSet> resultSet;
+        private final int[] indexes;
+
+        private ResolvedIndexes(ResultSet resultSet, int[] indexes) {
+            this.resultSet = new WeakReference<>(resultSet);
+            this.indexes = indexes;
+        }
+    }
+
+    /**
+     * Constructor
+     * @param columnLabels the labels of the columns to resolve
+     */
+    public ColumnIndexResolver(String... columnLabels) {
+        this.columnLabels = columnLabels.clone();
+    }
+
+    /**
+     * Get the column indexes for the given ResultSet
+     * @param rs the ResultSet
+     * @return the (1 based) index of each column label, in the order of the labels
+     * @throws SQLException in case a column label is not found
+     */
+    public int[] getColumnIndexes(ResultSet rs) throws SQLException {
+        ResolvedIndexes[] resolved = lastResolved.get();
+        if (resolved == null) {
+            resolved = new ResolvedIndexes[RESOLVED_PER_THREAD];
+            lastResolved.set(resolved);
+        }
+        int slot = 0;
+        while (slot < resolved.length - 1 && resolved[slot] != null && resolved[slot].resultSet.get() != rs) {
+            slot++;
+        }
+        final ResolvedIndexes found = resolved[slot] != null && resolved[slot].resultSet.get() == rs
+                ? resolved[slot] : new ResolvedIndexes(rs, resolve(rs));
+        // most recently used first, the least recently used one is dropped when full
+        System.arraycopy(resolved, 0, resolved, 1, slot);
+        resolved[0] = found;
+        return found.indexes;
+    }
+
+    private int[] resolve(ResultSet rs) throws SQLException {
+        final ResultSetMetaData metaData = rs.getMetaData();
+        final Map<String, Integer> indexByLabel = new HashMap<>();
+        for (int col = 1; col <= metaData.getColumnCount(); col++) {
+            indexByLabel.putIfAbsent(metaData.getColumnLabel(col).toLowerCase(Locale.ROOT), col);
+        }
+        final int[] indexes = new int[columnLabels.length];
+        for (int i = 0; i < columnLabels.length; i++) {
+            final Integer index = indexByLabel.get(columnLabels[i].toLowerCase(Locale.ROOT));
+            // Let the driver resolve (or reject) the labels that are not found in the meta data
+            indexes[i] = index != null ? index : rs.findColumn(columnLabels[i]);
+        }
+        return indexes;
+    }
+}
@@ -0,0 +1,137 @@
+package org.fylia.jappa.core;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Spliterator;
+import java.util.function.Consumer;
+
+/**
+ * Spliterator over the rows of a table with an integral id, between a lowest and a highest id.
+ * It splits in ranges of a given number of ids, halving the number of ranges at each split,
+ * so a parallel stream reads each range with its own query, and idle threads take over the ranges not read yet.
+ * The sizes are computed unsigned, so the ids may span the whole range of long values.
+ * <p>
+ * A range is read by a single call of the {@link RangeReader}: {@link #forEachRemaining(Consumer)} passes the rows on
+ * as they are read, while {@link #tryAdvance(Consumer)} keeps the rows of the range in memory until they are consumed.
+ * @param <T> the type of the rows
+ * @author fylia
+ */
+public final class IdRangeSpliterator<T> implements Spliterator<T> {
+    private long from;
+    private final long to;
+    private final long rangeSize;
+    private final RangeReader<T> reader;
+    private Iterator<T> buffered;
+    private boolean read;
+
+    /**
+     * Constructor
+     * @param from the lowest id, included
+     * @param to the highest id, included
+     * @param rangeSize the number of ids of a range, the last range may hold less. Compared unsigned,
+     * -1 (the highest unsigned value) never splits
+     * @param reader reads the rows of a range
+     */
+    public IdRangeSpliterator(long from, long to, long rangeSize, RangeReader<T> reader) {
+        this.from = from;
+        this.to = to;
+        this.rangeSize = rangeSize == 0 ? 1 : rangeSize;
+        this.reader = reader;
+    }
+
+    @Override
+    public boolean tryAdvance(Consumer<? super T> action) {
+        if (buffered == null) {
+            if (read) {
+                return false;
+            }
+            final List<T> rows = new ArrayList<>();
+            readRange(rows::add);
+            buffered = rows.iterator();
+        }
+        if (!buffered.hasNext()) {
+            return false;
+        }
+        action.accept(buffered.next());
+        return true;
+    }
+
+    @Override
+    public void forEachRemaining(Consumer<? super T> action) {
+        if (buffered != null) {
+            buffered.forEachRemaining(action);
+        } else if (!read) {
+            readRange(action);
+        }
+    }
+
+    private void readRange(Consumer<? super T> action) {
+        read = true;
+        reader.read(from, to, action);
+    }
+
+    @Override
+    public Spliterator<T> trySplit() {
+        // the number of ranges after the first one
+        final long moreRanges = Long.divideUnsigned(to - from, rangeSize);
+        if (read || moreRanges == 0) {
+            return null;
+        }
+        // half of the ranges, rounded down, without overflowing when there are 2^64 of them
+        final long prefixRanges = (moreRanges >>> 1) + (moreRanges & 1);
+        final long middle = from + prefixRanges * rangeSize - 1;
+        final IdRangeSpliterator<T> prefix = new IdRangeSpliterator<>(from, middle, rangeSize, reader);
+        from = middle + 1;
+        return prefix;
+    }
+
+    /**
+     * Split in all the ranges, e.g. to read them on other threads
+     * @return the spliterators of the ranges, in the order of their ids
+     */
+    public List<IdRangeSpliterator<T>> splitRanges() {
+        final List<IdRangeSpliterator<T>> ranges = new ArrayList<>();
+        addRanges(this, ranges);
+        return ranges;
+    }
+
+    private static <T> void addRanges(IdRangeSpliterator<T> spliterator, List<IdRangeSpliterator<T>> ranges) {
+        final IdRangeSpliterator<T> prefix = (IdRangeSpliterator<T>) spliterator.trySplit();
+        if (prefix == null) {
+            ranges.add(spliterator);
+        } else {
+            addRanges(prefix, ranges);
+            addRanges(spliterator, ranges);
+        }
+    }
+
+    @Override
+    public long estimateSize() {
+        if (read) {
+            return 0;
+        }
+        final long size = to - from + 1;
+        return size > 0 ? size : Long.MAX_VALUE;
+    }
+
+    @Override
+    public int characteristics() {
+        return ORDERED | NONNULL;
+    }
+
+    /**
+     * Reads the rows of an id range
+     * @param <T> the type of the rows
+     */
+    @FunctionalInterface
+    public interface RangeReader<T> {
+        /**
+         * Read the rows of a range, ordered by id
+         * @param from the lowest id, included
+         * @param to the highest id, included
+         * @param action called for each row
+         */
+        void read(long from, long to, Consumer<? super T> action);
+    }
+}
@@ -0,0 +1,132 @@
+package org.fylia.jappa.core;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * Identity map (first level cache) bound to the running Spring transaction:
+ * within a transaction, a row is mapped to a single instance per entity class and id,
+ * and getById does not query again a row that was already loaded.
+ * <p>
+ * The map is bound by a dao that has the identity map enabled, on its first use in a transaction,
+ * and is cleared when the transaction completes (commit or rollback). Once bound, all generated
+ * mappers running in the transaction use it. Outside a transaction nothing is cached.
+ * <p>
+ * References only holding an id (e.g. the supplier of an article read by the article mapper) are kept apart:
+ * they resolve to the loaded instance when there is one and are shared otherwise, but never returned by {@link #get(Class, Object)}.
+ * @author fylia
+ */
+public final class IdentityMap {
+    private final Map<Class<?>, Map<Object, Object>> entities = new HashMap<>();
+    private final Map<Class<?>, Map<Object, Object>> references = new HashMap<>();
+
+    private IdentityMap() {
+    }
+
+    /**
+     * @return the identity map bound to the current transaction, null if none is bound
+     */
+    public static IdentityMap current() {
+        return (IdentityMap) TransactionSynchronizationManager.getResource(IdentityMap.class);
+    }
+
+    /**
+     * Get the identity map of the current transaction, binding a new one if none is bound yet
+     * @return the identity map, null when no transaction is running
+     */
+    public static IdentityMap bindToTransaction() {
+        IdentityMap identityMap = current();
+        if (identityMap == null && TransactionSynchronizationManager.isSynchronizationActive()) {
+            identityMap = new IdentityMap();
+            TransactionSynchronizationManager.bindResource(IdentityMap.class, identityMap);
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+                @Override
+                public void afterCompletion(int status) {
+                    final IdentityMap completed = (IdentityMap) TransactionSynchronizationManager.unbindResourceIfPossible(IdentityMap.class);
+                    if (completed != null) {
+                        completed.clear();
+                    }
+                }
+            });
+        }
+        return identityMap;
+    }
+
+    /**
+     * Get the instance of a mapped row from the identity map of the current transaction
+     * @param <T> the type of the entity
+     * @param type the class of the entity
+     * @param id the id of the row
+     * @param entity the freshly mapped row
+     * @return the instance already loaded in the current transaction, the given entity otherwise
+     */
+    public static <T> T canonical(Class<T> type, Object id, T entity) {
+        final IdentityMap identityMap = current();
+        return identityMap == null ? entity : identityMap.putIfAbsent(type, id, entity);
+    }
+
+    /**
+     * Get the instance of a reference (only holding its id) from the identity map of the current transaction
+     * @param <T> the type of the entity
+     * @param type the class of the entity
+     * @param id the id of the reference
+     * @param reference the freshly mapped reference
+     * @return the instance loaded in the current transaction, else the reference already mapped, else the given reference
+     */
+    public static <T> T reference(Class<T> type, Object id, T reference) {
+        final IdentityMap identityMap = current();
+        if (identityMap == null) {
+            return reference;
+        }
+        final T loaded = identityMap.get(type, id);
+        if (loaded != null) {
+            return loaded;
+        }
+        return type.cast(identityMap.references.computeIfAbsent(type, t -> new HashMap<>()).computeIfAbsent(id, i -> reference));
+    }
+
+    /**
+     * @param <T> the type of the entity
+     * @param type the class of the entity
+     * @param id the id
+     * @return the loaded instance, null if not loaded yet
+     */
+    public <T> T get(Class<T> type, Object id) {
+        final Map<Object, Object> byId = entities.get(type);
+        return byId == null ? null : type.cast(byId.get(id));
+    }
+
+    /**
+     * Register a loaded instance, unless an instance with the same id was already loaded
+     * @param <T> the type of the entity
+     * @param type the class of the entity
+     * @param id the id
+     * @param entity the loaded instance
+     * @return the instance registered for the id
+     */
+    public <T> T putIfAbsent(Class<T> type, Object id, T entity) {
+        return type.cast(entities.computeIfAbsent(type, t -> new HashMap<>()).computeIfAbsent(id, i -> entity));
+    }
+
+    /**
+     * Register an instance, replacing the instance registered for the same id (e.g. after an update)
+     * @param <T> the type of the entity
+     * @param type the class of the entity
+     * @param id the id
+     * @param entity the instance
+     */
+    public <T> void put(Class<T> type, Object id, T entity) {
+        entities.computeIfAbsent(type, t -> new HashMap<>()).put(id, entity);
+    }
+
+    /**
+     * Forget all instances
+     */
+    public void clear() {
+        entities.clear();
+        references.clear();
+    }
+}
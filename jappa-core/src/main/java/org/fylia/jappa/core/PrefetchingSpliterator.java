@@ -0,0 +1,166 @@
+package org.fylia.jappa.core;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * Spliterator reading partitions ahead, on threads of its own, and passing on their rows in the order of the partitions.
+ * At most a given number of partitions are read at once, and each of them keeps at most a given number of rows
+ * that were read but not consumed yet: a partition waits when its buffer is full.
+ * So the blocking reads do not run on the threads of the stream (e.g. of the common fork join pool), and a short
+ * circuiting stream holds only the buffered rows. The reads start when the first row is requested,
+ * and are cancelled when the spliterator is closed.
+ * @param <T> the type of the rows
+ * @author fylia
+ */
+public final class PrefetchingSpliterator<T> extends Spliterators.AbstractSpliterator<T> implements AutoCloseable {
+    private static final Object END = new Object();
+    private static final long OFFER_TIMEOUT_MILLIS = 100;
+    private static final AtomicInteger THREAD_COUNT = new AtomicInteger();
+
+    private final List<? extends Spliterator<T>> partitions;
+    private final int concurrency;
+    private final int bufferSize;
+    private final List<BlockingQueue<Object>> buffers;
+    private ExecutorService executor;
+    private int current;
+    private volatile boolean closed;
+
+    /**
+     * Constructor
+     * @param partitions the partitions, each read with {@link Spliterator#forEachRemaining(Consumer)} on a thread of its own
+     * @param concurrency the maximum number of partitions read at once
+     * @param bufferSize the maximum number of rows of a partition read but not consumed yet
+     */
+    public PrefetchingSpliterator(List<? extends Spliterator<T>> partitions, int concurrency, int bufferSize) {
+        super(Long.MAX_VALUE, Spliterator.ORDERED | Spliterator.NONNULL);
+        this.partitions = partitions;
+        this.concurrency = Math.max(1, Math.min(concurrency, partitions.size()));
+        this.bufferSize = Math.max(1, bufferSize);
+        this.buffers = new ArrayList<>(partitions.size());
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public boolean tryAdvance(Consumer<? super T> action) {
+        if (closed) {
+            return false;
+        }
+        if (executor == null) {
+            start();
+        }
+        while (current < buffers.size()) {
+            final Object row = take(buffers.get(current));
+            if (row == END) {
+                current++;
+            } else if (row instanceof Failure) {
+                close();
+                throw ((Failure) row).rethrow();
+            } else {
+                action.accept((T) row);
+                return true;
+            }
+        }
+        close();
+        return false;
+    }
+
+    private void start() {
+        executor = new ThreadPoolExecutor(concurrency, concurrency, 0, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<>(), task -> {
+            final Thread thread = new Thread(task, "jappa-scan-" + THREAD_COUNT.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        for (Spliterator<T> partition : partitions) {
+            final BlockingQueue<Object> buffer = new ArrayBlockingQueue<>(bufferSize);
+            buffers.add(buffer);
+            executor.execute(() -> read(partition, buffer));
+        }
+        // the threads end once all partitions are read
+        executor.shutdown();
+    }
+
+    private void read(Spliterator<T> partition, BlockingQueue<Object> buffer) {
+        try {
+            partition.forEachRemaining(row -> put(buffer, row));
+            put(buffer, END);
+        } catch (Cancelled e) {
+            // closed, nobody reads the rows anymore
+        } catch (RuntimeException | Error e) {
+            if (!closed) {
+                put(buffer, new Failure(e));
+            }
+        }
+    }
+
+    private void put(BlockingQueue<Object> buffer, Object row) {
+        try {
+            while (!buffer.offer(row, OFFER_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS)) {
+                if (closed) {
+                    throw new Cancelled();
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new Cancelled();
+        }
+    }
+
+    private Object take(BlockingQueue<Object> buffer) {
+        try {
+            return buffer.take();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            close();
+            throw new IllegalStateException("Interrupted while waiting for the rows of a partition", e);
+        }
+    }
+
+    /**
+     * Cancel the reads not done yet
+     */
+    @Override
+    public void close() {
+        if (!closed) {
+            closed = true;
+            if (executor != null) {
+                executor.shutdownNow();
+            }
+        }
+    }
+
+    /**
+     * Failure of the read of a partition, rethrown on the thread consuming the rows
+     */
+    private static final class Failure {
+        private final Throwable cause;
+
+        Failure(Throwable cause) {
+            this.cause = cause;
+        }
+
+        RuntimeException rethrow() {
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            return (RuntimeException) cause;
+        }
+    }
+
+    /**
+     * Thrown on the reading threads to stop a read once the spliterator is closed
+     */
+    private static final class Cancelled extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+    }
+}
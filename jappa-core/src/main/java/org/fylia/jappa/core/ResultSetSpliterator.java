@@ -0,0 +1,71 @@
+package org.fylia.jappa.core;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.Consumer;
+
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.jdbc.support.SQLExceptionTranslator;
+
+/**
+ * Spliterator mapping the rows of a forward only {@link ResultSet} one at a time.
+ * The resources are released, through the given close action, as soon as the last
+ * row has been read or the stream using the spliterator is closed.
+ * @param <T> the type of the mapped rows
+ * @author fylia
+ */
+public final class ResultSetSpliterator<T> extends Spliterators.AbstractSpliterator<T> implements AutoCloseable {
+    private final ResultSet resultSet;
+    private final RowMapper<T> rowMapper;
+    private final SQLExceptionTranslator exceptionTranslator;
+    private final String sql;
+    private final Runnable closeAction;
+    private int rowNum;
+    private boolean closed;
+
+    /**
+     * Constructor
+     * @param resultSet the result set to read
+     * @param rowMapper the mapper for the rows
+     * @param exceptionTranslator translates SQLExceptions thrown while reading
+     * @param sql the sql of the query, for error reporting
+     * @param closeAction releases the result set, its statement and connection
+     */
+    public ResultSetSpliterator(ResultSet resultSet, RowMapper<T> rowMapper,
+            SQLExceptionTranslator exceptionTranslator, String sql, Runnable closeAction) {
+        super(Long.MAX_VALUE, Spliterator.ORDERED);
+        this.resultSet = resultSet;
+        this.rowMapper = rowMapper;
+        this.exceptionTranslator = exceptionTranslator;
+        this.sql = sql;
+        this.closeAction = closeAction;
+    }
+
+    @Override
+    public boolean tryAdvance(Consumer<? super T> action) {
+        if (closed) {
+            return false;
+        }
+        try {
+            if (!resultSet.next()) {
+                close();
+                return false;
+            }
+            action.accept(rowMapper.mapRow(resultSet, rowNum++));
+            return true;
+        } catch (SQLException e) {
+            close();
+            throw exceptionTranslator.translate("ResultSetSpliterator", sql, e);
+        }
+    }
+
+    @Override
+    public void close() {
+        if (!closed) {
+            closed = true;
+            closeAction.run();
+        }
+    }
+}
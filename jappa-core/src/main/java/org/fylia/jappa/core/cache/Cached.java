@@ -0,0 +1,20 @@
+package org.fylia.jappa.core.cache;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Marks an entity to be kept in the second level {@link EntityCache}: the generated template reads
+ * getById/findByIds through the cache and invalidates the cached rows it updates.
+ * @author fylia
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.TYPE)
+public @interface Cached {
+    /**
+     * @return the maximum number of rows kept in the cache
+     */
+    int maxSize() default 1000;
+}
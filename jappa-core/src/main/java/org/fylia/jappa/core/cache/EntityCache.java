@@ -0,0 +1,39 @@
+package org.fylia.jappa.core.cache;
+
+/**
+ * Second level cache for the rows of one entity, by id, shared between transactions and threads.
+ * The generated templates only put and get copies of their rows, so the cached instances are never handed out.
+ * @param <K> the type of the id
+ * @param <V> the type of the entity
+ * @author fylia
+ */
+public interface EntityCache<K, V> {
+    /**
+     * @param id the id
+     * @return the cached row, null if not cached
+     */
+    V get(K id);
+
+    /**
+     * Cache a row
+     * @param id the id
+     * @param entity the row
+     */
+    void put(K id, V entity);
+
+    /**
+     * Remove a row from the cache
+     * @param id the id
+     */
+    void evict(K id);
+
+    /**
+     * Remove all rows from the cache
+     */
+    void clear();
+
+    /**
+     * @return the counters of the cache
+     */
+    CacheStatistics getStatistics();
+}
@@ -0,0 +1,18 @@
+package org.fylia.jappa.core.cache;
+
+/**
+ * Service provider for the second level {@link EntityCache}s.
+ * Set on the daos (or autowired) to plug in another cache implementation.
+ * @author fylia
+ */
+public interface EntityCacheProvider {
+    /**
+     * Get the cache of an entity, the same cache for every call with the same entity
+     * @param <K> the type of the id
+     * @param <V> the type of the entity
+     * @param entityType the class of the entity
+     * @param maxSize the maximum number of rows kept in the cache
+     * @return the cache
+     */
+    <K, V> EntityCache<K, V> getCache(Class<V> entityType, int maxSize);
+}
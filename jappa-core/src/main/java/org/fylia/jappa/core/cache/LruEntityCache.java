@@ -0,0 +1,122 @@
+package org.fylia.jappa.core.cache;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Bounded, concurrent least recently used {@link EntityCache}.
+ * The rows are spread by id over segments, each an access ordered map guarded by its own lock,
+ * so concurrent lookups of different rows rarely contend; each segment evicts its least recently used row
+ * when it is full, which keeps the cache within its maximum size.
+ * @param <K> the type of the id
+ * @param <V> the type of the entity
+ * @author fylia
+ */
+public final class LruEntityCache<K, V> implements EntityCache<K, V> {
+    private static final int MAX_SEGMENTS = 16;
+    private final List<Segment> segments;
+    private final CacheStatistics statistics = new CacheStatistics();
+
+    /**
+     * Segment of the cache
+     */
+    private final class Segment extends LinkedHashMap<K, V> {
+        private static final long serialVersionUID = 1L;
+        private final int maxSize;
+
+        private Segment(int maxSize) {
+            super(16, 0.75f, true);
+            this.maxSize = maxSize;
+        }
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<K, V> eldest) {
+            if (size() > maxSize) {
+                statistics.recordEviction();
+                return true;
+            }
+            return false;
+        }
+    }
+
+    /**
+     * Constructor
+     * @param maxSize the maximum number of rows kept in the cache
+     */
+    public LruEntityCache(int maxSize) {
+        if (maxSize <= 0) {
+            throw new IllegalArgumentException("Maximum size must be positive");
+        }
+        // small caches get less segments, so the least recently used row of the whole cache is evicted (nearly)
+        final int segmentCount = Math.max(1, Math.min(MAX_SEGMENTS, Integer.highestOneBit(maxSize / 64)));
+        segments = new ArrayList<>(segmentCount);
+        for (int i = 0; i < segmentCount; i++) {
+            segments.add(new Segment(maxSize / segmentCount + (i < maxSize % segmentCount ? 1 : 0)));
+        }
+    }
+
+    private Segment segmentFor(Object id) {
+        final int hash = id.hashCode();
+        return segments.get((hash ^ (hash >>> 16)) & (segments.size() - 1));
+    }
+
+    @Override
+    public V get(K id) {
+        final Segment segment = segmentFor(id);
+        final V entity;
+        synchronized (segment) {
+            entity = segment.get(id);
+        }
+        if (entity == null) {
+            statistics.recordMiss();
+        } else {
+            statistics.recordHit();
+        }
+        return entity;
+    }
+
+    @Override
+    public void put(K id, V entity) {
+        final Segment segment = segmentFor(id);
+        synchronized (segment) {
+            segment.put(id, entity);
+        }
+    }
+
+    @Override
+    public void evict(K id) {
+        final Segment segment = segmentFor(id);
+        synchronized (segment) {
+            segment.remove(id);
+        }
+    }
+
+    @Override
+    public void clear() {
+        for (Segment segment : segments) {
+            synchronized (segment) {
+                segment.clear();
+            }
+        }
+    }
+
+    /**
+     * @return the number of cached rows
+     */
+    public int size() {
+        int size = 0;
+        for (Segment segment : segments) {
+            synchronized (segment) {
+                size += segment.size();
+            }
+        }
+        return size;
+    }
+
+    @Override
+    public CacheStatistics getStatistics() {
+        return statistics;
+    }
+}
@@ -0,0 +1,25 @@
+package org.fylia.jappa.core.cache;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Default {@link EntityCacheProvider}, keeping an {@link LruEntityCache} per entity.
+ * @author fylia
+ */
+public class LruEntityCacheProvider implements EntityCacheProvider {
+    private final Map<Class<?>, EntityCache<?, ?>> caches = new ConcurrentHashMap<>();
+
+    @SuppressWarnings("unchecked")
+    @Override
+    public <K, V> EntityCache<K, V> getCache(Class<V> entityType, int maxSize) {
+        return (EntityCache<K, V>) caches.computeIfAbsent(entityType, type -> new LruEntityCache<K, V>(maxSize));
+    }
+
+    /**
+     * Remove all rows from all caches, e.g. after the database was changed behind the daos
+     */
+    public void clearAll() {
+        caches.values().forEach(EntityCache::clear);
+    }
+}
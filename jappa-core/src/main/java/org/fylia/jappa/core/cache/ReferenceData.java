@@ -0,0 +1,21 @@
+package org.fylia.jappa.core.cache;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Marks a small, read mostly entity as reference data: the generated template loads the whole table
+ * once in a {@link ReferenceDataSnapshot} and serves getById, findByIds, findAll and the many to one references
+ * to the entity from memory. The returned instances are shared and must not be modified.
+ * @author fylia
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.TYPE)
+public @interface ReferenceData {
+    /**
+     * @return the number of seconds after which the table is loaded again, 0 to only load it again when it is refreshed explicitly
+     */
+    long refreshSeconds() default 0;
+}
@@ -0,0 +1,73 @@
+package org.fylia.jappa.core.cache;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * Immutable snapshot of all rows of a reference data table, indexed by id.
+ * @param <K> the type of the id
+ * @param <T> the type of the entity
+ * @author fylia
+ */
+public final class ReferenceDataSnapshot<K, T> {
+    private final List<T> rows;
+    private final Map<K, T> rowsById;
+    private final long loadedAt = System.nanoTime();
+
+    /**
+     * Constructor
+     * @param rows all rows of the table
+     * @param idGetter gets the id of a row
+     */
+    public ReferenceDataSnapshot(List<T> rows, Function<T, K> idGetter) {
+        this.rows = Collections.unmodifiableList(new ArrayList<>(rows));
+        final Map<K, T> byId = new HashMap<>(rows.size() * 4 / 3 + 1);
+        for (T row : rows) {
+            byId.put(idGetter.apply(row), row);
+        }
+        this.rowsById = Collections.unmodifiableMap(byId);
+    }
+
+    /**
+     * @param id the id
+     * @return the row, null if there is no row with the id
+     */
+    public T get(K id) {
+        return rowsById.get(id);
+    }
+
+    /**
+     * @param ids the ids, null values and duplicates are ignored
+     * @return the rows found, by id, in the order of the given ids
+     */
+    public Map<K, T> get(Collection<K> ids) {
+        final Map<K, T> result = new LinkedHashMap<>();
+        for (K id : ids) {
+            final T row = id == null ? null : rowsById.get(id);
+            if (row != null) {
+                result.put(id, row);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @return all rows, in the order they were loaded
+     */
+    public List<T> getAll() {
+        return rows;
+    }
+
+    /**
+     * @return the {@link System#nanoTime()} when the snapshot was loaded
+     */
+    public long getLoadedAt() {
+        return loadedAt;
+    }
+}
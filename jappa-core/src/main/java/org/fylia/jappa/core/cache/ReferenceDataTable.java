@@ -0,0 +1,114 @@
+package org.fylia.jappa.core.cache;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * Holds the current {@link ReferenceDataSnapshot} of a reference data table, swapped atomically when it is loaded again.
+ * <p>
+ * Readers never wait for a refresh: when the snapshot expired, one reader loads the next snapshot
+ * while the others keep reading the current one. Only the very first load is waited for.
+ * A snapshot loaded while the table was invalidated (by a write) is used once but not kept.
+ * @param <K> the type of the id
+ * @param <T> the type of the entity
+ * @author fylia
+ */
+public final class ReferenceDataTable<K, T> {
+    private final AtomicReference<ReferenceDataSnapshot<K, T>> snapshot = new AtomicReference<>();
+    private final AtomicLong generation = new AtomicLong();
+    private final ReentrantLock loadLock = new ReentrantLock();
+    private final long refreshNanos;
+
+    /**
+     * Constructor
+     * @param refreshSeconds the number of seconds after which the table is loaded again, 0 to only load it again on {@link #refresh(Supplier)}
+     */
+    public ReferenceDataTable(long refreshSeconds) {
+        this.refreshNanos = TimeUnit.SECONDS.toNanos(refreshSeconds);
+    }
+
+    /**
+     * @return the current snapshot, null if the table is not loaded
+     */
+    public ReferenceDataSnapshot<K, T> current() {
+        return snapshot.get();
+    }
+
+    /**
+     * Get the current snapshot, loading it when the table is not loaded yet or the snapshot expired
+     * @param loader loads the table
+     * @return the snapshot
+     */
+    public ReferenceDataSnapshot<K, T> get(Supplier<ReferenceDataSnapshot<K, T>> loader) {
+        final ReferenceDataSnapshot<K, T> current = snapshot.get();
+        if (current == null) {
+            loadLock.lock();
+            try {
+                final ReferenceDataSnapshot<K, T> loaded = snapshot.get();
+                return loaded != null ? loaded : load(loader);
+            } finally {
+                loadLock.unlock();
+            }
+        }
+        if (refreshNanos > 0 && System.nanoTime() - current.getLoadedAt() > refreshNanos && loadLock.tryLock()) {
+            try {
+                return snapshot.get() == current ? load(loader) : snapshot.get();
+            } finally {
+                loadLock.unlock();
+            }
+        }
+        return current;
+    }
+
+    /**
+     * Load the table again and swap the snapshot
+     * @param loader loads the table
+     * @return the new snapshot
+     */
+    public ReferenceDataSnapshot<K, T> refresh(Supplier<ReferenceDataSnapshot<K, T>> loader) {
+        loadLock.lock();
+        try {
+            return load(loader);
+        } finally {
+            loadLock.unlock();
+        }
+    }
+
+    /**
+     * Drop the snapshot after a write to the table, so it is loaded again on the next read.
+     * When a transaction is running, the snapshot is dropped again when it completes,
+     * so a snapshot holding the uncommitted write is not kept.
+     */
+    public void invalidate() {
+        generation.incrementAndGet();
+        snapshot.set(null);
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+                @Override
+                public void afterCompletion(int status) {
+                    generation.incrementAndGet();
+                    snapshot.set(null);
+                }
+            });
+        }
+    }
+
+    private ReferenceDataSnapshot<K, T> load(Supplier<ReferenceDataSnapshot<K, T>> loader) {
+        final long loadGeneration = generation.get();
+        final ReferenceDataSnapshot<K, T> loaded = loader.get();
+        if (generation.get() == loadGeneration) {
+            snapshot.set(loaded);
+            if (generation.get() != loadGeneration) {
+                // invalidated while publishing
+                snapshot.compareAndSet(loaded, null);
+            }
+        }
+        return loaded;
+    }
+}
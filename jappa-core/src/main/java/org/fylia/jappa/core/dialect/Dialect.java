@@ -0,0 +1,119 @@
+package org.fylia.jappa.core.dialect;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * The SQL that differs between the supported databases.
+ * <p>
+ * The upsert statements insert a row or update it when a row with the same id exists, in a single statement.
+ * They all bind the id columns followed by the detail columns, like the insert statement, so they can be batched
+ * with the same parameter setters.
+ * @author fylia
+ */
+public enum Dialect {
+    H2 {
+        @Override
+        public String upsertSql(String table, List<String> idColumns, List<String> detailColumns) {
+            return "MERGE INTO " + table + " (" + columns(idColumns, detailColumns) + ") KEY (" + String.join(", ", idColumns)
+                    + ") VALUES (" + parameters(idColumns.size() + detailColumns.size()) + ")";
+        }
+    },
+    HSQLDB {
+        @Override
+        public String upsertSql(String table, List<String> idColumns, List<String> detailColumns) {
+            final String columns = columns(idColumns, detailColumns);
+            return "MERGE INTO " + table + " USING (VALUES (" + parameters(idColumns.size() + detailColumns.size()) + ")) AS v (" + columns + ")"
+                    + " ON " + idColumns.stream().map(col -> table + "." + col + " = v." + col).collect(Collectors.joining(" AND "))
+                    + (detailColumns.isEmpty() ? "" : " WHEN MATCHED THEN UPDATE SET "
+                        + detailColumns.stream().map(col -> table + "." + col + " = v." + col).collect(Collectors.joining(", ")))
+                    + " WHEN NOT MATCHED THEN INSERT (" + columns + ") VALUES ("
+                    + idColumns.stream().map(col -> "v." + col).collect(Collectors.joining(", "))
+                    + detailColumns.stream().map(col -> ", v." + col).collect(Collectors.joining()) + ")";
+        }
+
+        @Override
+        public String nextSequenceValueSql(String sequenceName) {
+            return "CALL NEXT VALUE FOR " + sequenceName;
+        }
+    },
+    POSTGRESQL {
+        @Override
+        public String upsertSql(String table, List<String> idColumns, List<String> detailColumns) {
+            return "INSERT INTO " + table + " (" + columns(idColumns, detailColumns) + ") VALUES (" + parameters(idColumns.size() + detailColumns.size())
+                    + ") ON CONFLICT (" + String.join(", ", idColumns) + ") DO "
+                    + (detailColumns.isEmpty() ? "NOTHING"
+                        : "UPDATE SET " + detailColumns.stream().map(col -> col + " = EXCLUDED." + col).collect(Collectors.joining(", ")));
+        }
+
+        @Override
+        public String nextSequenceValueSql(String sequenceName) {
+            return "SELECT nextval('" + sequenceName + "')";
+        }
+    },
+    MYSQL {
+        @Override
+        public String upsertSql(String table, List<String> idColumns, List<String> detailColumns) {
+            final List<String> updatedColumns = detailColumns.isEmpty() ? idColumns : detailColumns;
+            return "INSERT INTO " + table + " (" + columns(idColumns, detailColumns) + ") VALUES (" + parameters(idColumns.size() + detailColumns.size())
+                    + ") ON DUPLICATE KEY UPDATE " + updatedColumns.stream().map(col -> col + " = VALUES(" + col + ")").collect(Collectors.joining(", "));
+        }
+
+        @Override
+        public String nextSequenceValueSql(String sequenceName) {
+            throw new UnsupportedOperationException("MySQL has no sequences, use a table generator for " + sequenceName);
+        }
+    };
+
+    /**
+     * Get the statement inserting a row, or updating its detail columns when a row with the same id exists
+     * @param table the table
+     * @param idColumns the id columns, bound first
+     * @param detailColumns the other columns, bound after the id columns, none of them may be an id column
+     * @return the upsert statement
+     */
+    public abstract String upsertSql(String table, List<String> idColumns, List<String> detailColumns);
+
+    /**
+     * @param sequenceName the name of a sequence
+     * @return the query reading the next value of the sequence
+     */
+    public String nextSequenceValueSql(String sequenceName) {
+        return "SELECT NEXT VALUE FOR " + sequenceName;
+    }
+
+    /**
+     * Get the dialect of a database
+     * @param databaseProductName the product name from the database meta data
+     * @return the dialect, null if the database is not supported
+     */
+    public static Dialect forDatabaseProductName(String databaseProductName) {
+        if (databaseProductName == null) {
+            return null;
+        } else if (databaseProductName.startsWith("H2")) {
+            return H2;
+        } else if (databaseProductName.startsWith("HSQL")) {
+            return HSQLDB;
+        } else if (databaseProductName.startsWith("PostgreSQL")) {
+            return POSTGRESQL;
+        } else if (databaseProductName.startsWith("MySQL") || databaseProductName.startsWith("MariaDB")) {
+            return MYSQL;
+        }
+        return null;
+    }
+
+    private static String columns(List<String> idColumns, List<String> detailColumns) {
+        for (String column : detailColumns) {
+            if (idColumns.stream().anyMatch(column::equalsIgnoreCase)) {
+                throw new IllegalArgumentException("Column " + column + " is an id column, it is not a detail column");
+            }
+        }
+        return idColumns.stream().collect(Collectors.joining(", "))
+                + detailColumns.stream().map(col -> ", " + col).collect(Collectors.joining());
+    }
+
+    private static String parameters(int count) {
+        return String.join(", ", Collections.nCopies(count, "?"));
+    }
+}
@@ -0,0 +1,149 @@
+package org.fylia.jappa.core.id;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+import javax.sql.DataSource;
+
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+/**
+ * Allocates ids from blocks reserved in the database with a single round trip per block (pooled optimizer),
+ * so inserts, and batch inserts in particular, can assign their ids up front instead of reading generated keys.
+ * <p>
+ * The allocator is thread safe: the ids of the current block are handed out under the lock of the allocator,
+ * the database is only accessed when a block is exhausted.
+ * @author fylia
+ */
+public final class PooledIdAllocator {
+    private final BlockSource blockSource;
+    private final int allocationSize;
+    private long next;
+    private long limit;
+
+    /**
+     * Reserves a block of ids in the database
+     */
+    @FunctionalInterface
+    public interface BlockSource {
+        /**
+         * Reserve the next block of ids
+         * @param allocationSize the number of ids in the block
+         * @return the first id of the block
+         */
+        long reserveBlock(int allocationSize);
+    }
+
+    /**
+     * Constructor
+     * @param blockSource reserves the blocks of ids
+     * @param allocationSize the number of ids reserved at once
+     */
+    public PooledIdAllocator(BlockSource blockSource, int allocationSize) {
+        if (allocationSize < 1) {
+            throw new IllegalArgumentException("The allocation size should be positive: " + allocationSize);
+        }
+        this.blockSource = blockSource;
+        this.allocationSize = allocationSize;
+    }
+
+    /**
+     * Allocator reading the blocks from a database sequence incremented by the allocation size:
+     * each value of the sequence is the first id of a block.
+     * @param dataSource the dataSource
+     * @param nextValueSql the query reading the next value of the sequence (see the Dialect)
+     * @param allocationSize the increment of the sequence
+     * @return the allocator
+     */
+    public static PooledIdAllocator sequence(DataSource dataSource, String nextValueSql, int allocationSize) {
+        final JdbcTemplate jdbcTemplate = new JdbcTemplate(dataSource);
+        return new PooledIdAllocator(size -> jdbcTemplate.queryForObject(nextValueSql, Long.class), allocationSize);
+    }
+
+    /**
+     * Allocator reading the blocks from a row of a table holding the last reserved id. The row is read and updated
+     * in a transaction of its own, on a separate connection, so a block is never handed out twice
+     * when the transaction of the insert rolls back.
+     * @param dataSource the dataSource
+     * @param table the table holding the generator rows
+     * @param pkColumnName the column with the name of the generator
+     * @param valueColumnName the column with the last reserved id
+     * @param pkColumnValue the name of the generator
+     * @param initialValue the last reserved id when the row does not exist yet
+     * @param allocationSize the number of ids reserved at once
+     * @return the allocator
+     */
+    public static PooledIdAllocator table(DataSource dataSource, String table, String pkColumnName, String valueColumnName,
+            String pkColumnValue, long initialValue, int allocationSize) {
+        final String selectSql = "select " + valueColumnName + " from " + table + " where " + pkColumnName + " = ? for update";
+        final String insertSql = "insert into " + table + " (" + pkColumnName + ", " + valueColumnName + ") values (?, ?)";
+        final String updateSql = "update " + table + " set " + valueColumnName + " = ? where " + pkColumnName + " = ?";
+        return new PooledIdAllocator(size -> {
+            try (Connection connection = dataSource.getConnection()) {
+                final boolean autoCommit = connection.getAutoCommit();
+                connection.setAutoCommit(false);
+                try {
+                    final long last = readLastValue(connection, selectSql, pkColumnValue);
+                    try (PreparedStatement ps = connection.prepareStatement(last < 0 ? insertSql : updateSql)) {
+                        final long reserved = (last < 0 ? initialValue : last) + size;
+                        ps.setString(last < 0 ? 1 : 2, pkColumnValue);
+                        ps.setLong(last < 0 ? 2 : 1, reserved);
+                        ps.executeUpdate();
+                    }
+                    connection.commit();
+                    return (last < 0 ? initialValue : last) + 1;
+                } catch (SQLException | RuntimeException e) {
+                    connection.rollback();
+                    throw e;
+                } finally {
+                    connection.setAutoCommit(autoCommit);
+                }
+            } catch (SQLException e) {
+                throw new DataAccessResourceFailureException("Could not reserve ids from " + table + " for " + pkColumnValue, e);
+            }
+        }, allocationSize);
+    }
+
+    private static long readLastValue(Connection connection, String selectSql, String pkColumnValue) throws SQLException {
+        try (PreparedStatement ps = connection.prepareStatement(selectSql)) {
+            ps.setString(1, pkColumnValue);
+            try (ResultSet rs = ps.executeQuery()) {
+                return rs.next() ? rs.getLong(1) : -1;
+            }
+        }
+    }
+
+    /**
+     * @return the next id
+     */
+    public synchronized long nextId() {
+        if (next >= limit) {
+            next = blockSource.reserveBlock(allocationSize);
+            limit = next + allocationSize;
+        }
+        return next++;
+    }
+
+    /**
+     * Allocate ids for a batch, reserving as many blocks as needed
+     * @param count the number of ids
+     * @return the ids
+     */
+    public synchronized long[] nextIds(int count) {
+        final long[] ids = new long[count];
+        for (int i = 0; i < count; i++) {
+            ids[i] = nextId();
+        }
+        return ids;
+    }
+
+    /**
+     * @return the number of ids reserved at once
+     */
+    public int getAllocationSize() {
+        return allocationSize;
+    }
+}
@@ -0,0 +1,20 @@
+package org.fylia.jappa.core.proxy;
+
+/**
+ * Implemented by the subclasses generated for the entities to track the columns changed through their setters
+ * since the row was loaded or stored, so an update only writes the changed columns.
+ * <p>
+ * Changes made without calling a setter (e.g. a java.util.Date modified in place) are not tracked.
+ * @author fylia
+ */
+public interface DirtyTracking {
+    /**
+     * @return a bit per changed column, in the order of the detail (non id) columns of the entity
+     */
+    long getDirtyColumns();
+
+    /**
+     * Forget the changes, once the row is loaded or stored
+     */
+    void clearDirtyColumns();
+}
@@ -0,0 +1,56 @@
+package org.fylia.jappa.core.proxy;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * The lazy references mapped from one query result: the first reference accessed loads all of them
+ * with a single call of the loader (one query per chunk of ids) instead of one query per reference.
+ * Once loaded, the batch does not accept new references.
+ * @param <K> the type of the id
+ * @param <T> the type of the entity
+ * @author fylia
+ */
+public final class LazyLoadBatch<K, T> {
+    private final Function<Collection<K>, Map<K, T>> loader;
+    private Map<K, List<LazyReference<T>>> pending = new LinkedHashMap<>();
+
+    /**
+     * Constructor
+     * @param loader loads the rows for a collection of ids, by id
+     */
+    public LazyLoadBatch(Function<Collection<K>, Map<K, T>> loader) {
+        this.loader = loader;
+    }
+
+    /**
+     * Add a reference to the batch
+     * @param id the id of the reference
+     * @param reference the reference
+     * @return false if the batch was already loaded, the reference is not added then
+     */
+    public synchronized boolean add(K id, LazyReference<T> reference) {
+        if (pending == null) {
+            return false;
+        }
+        pending.computeIfAbsent(id, i -> new ArrayList<>(1)).add(reference);
+        return true;
+    }
+
+    /**
+     * Load all references of the batch, unless already loaded
+     */
+    public synchronized void load() {
+        if (pending == null) {
+            return;
+        }
+        final Map<K, List<LazyReference<T>>> references = pending;
+        final Map<K, T> loaded = loader.apply(references.keySet());
+        pending = null;
+        references.forEach((id, byId) -> byId.forEach(reference -> reference.load(loaded.get(id))));
+    }
+}
@@ -0,0 +1,62 @@
+package org.fylia.jappa.core.proxy;
+
+import java.lang.ref.WeakReference;
+import java.sql.ResultSet;
+import java.util.Collection;
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * Groups the lazy references mapped by a row mapper in a {@link LazyLoadBatch} per ResultSet,
+ * so the references of one query result are loaded together.
+ * <p>
+ * Like the ColumnIndexResolver, it can be shared between threads: the batch of the last ResultSet is kept
+ * in an immutable holder, a mapper working on another ResultSet just starts a new batch.
+ * @param <K> the type of the id
+ * @param <T> the type of the entity
+ * @author fylia
+ */
+public final class LazyLoadBatches<K, T> {
+    private final Function<Collection<K>, Map<K, T>> loader;
+    private volatile CurrentBatch<K, T> current;
+
+    /**
+     * Holder for the batch of one ResultSet
+     */
+    private static final class CurrentBatch<K, T> {
+        private final WeakReference<ResultSet> resultSet;
+        private final LazyLoadBatch<K, T> batch;
+
+        private CurrentBatch(ResultSet resultSet, LazyLoadBatch<K, T> batch) {
+            this.resultSet = new WeakReference<>(resultSet);
+            this.batch = batch;
+        }
+    }
+
+    /**
+     * Constructor
+     * @param loader loads the rows by ids, e.g. with the dao that created the row mapper
+     */
+    public LazyLoadBatches(Function<Collection<K>, Map<K, T>> loader) {
+        this.loader = loader;
+    }
+
+    /**
+     * Add a reference to the batch of a ResultSet, starting a new batch when the ResultSet changed
+     * or its batch was already loaded
+     * @param rs the ResultSet the reference was mapped from
+     * @param id the id of the reference
+     * @param reference the reference
+     * @return the batch loading the reference
+     */
+    public LazyLoadBatch<K, T> add(ResultSet rs, K id, LazyReference<T> reference) {
+        CurrentBatch<K, T> batch = current;
+        if (batch != null && batch.resultSet.get() == rs && batch.batch.add(id, reference)) {
+            return batch.batch;
+        }
+        batch = new CurrentBatch<>(rs, new LazyLoadBatch<>(loader));
+        batch.batch.add(id, reference);
+        current = batch;
+        return batch.batch;
+    }
+}
@@ -0,0 +1,20 @@
+package org.fylia.jappa.core.proxy;
+
+/**
+ * A many to one reference mapped from its id only, loading its other properties on the first getter call.
+ * Implemented by the lazy reference subclasses generated for the entities.
+ * @param <T> the type of the entity
+ * @author fylia
+ */
+public interface LazyReference<T> {
+    /**
+     * Copy the properties of the loaded row into the reference
+     * @param loaded the loaded row, null when no row exists for the id of the reference
+     */
+    void load(T loaded);
+
+    /**
+     * @return if the properties were loaded
+     */
+    boolean isLoaded();
+}
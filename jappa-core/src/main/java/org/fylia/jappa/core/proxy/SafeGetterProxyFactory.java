@@ -6,10 +6,14 @@ import java.lang.annotation.RetentionPolicy;
 import java.lang.annotation.Target;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
-import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+import org.fylia.jappa.core.registry.EntityTemplate;
+import org.fylia.jappa.core.registry.Templates;
 
 import javassist.util.proxy.MethodFilter;
 import javassist.util.proxy.MethodHandler;
@@ -18,13 +22,18 @@ import javassist.util.proxy.ProxyObject;
 
 /**
  * Creates Proxies to objects for which getters should not be called unless the setter has been called. 
+ * The subclasses generated at compile time (registered by the generated templates) are used when available,
+ * javassist proxies otherwise. The template of an entity is looked up in the {@link Templates} registry and initialized
+ * on the first proxy of the entity, so the generated subclass is used even before the template is otherwise loaded.
  */
 public final class SafeGetterProxyFactory {
     private static final String SETTER_PREFIX="set";
     private static final String GETTER_PREFIX="get";
     private static final String BOOLEAN_GETTER_PREFIX="is";
     private static final GetterAndSetterMethodFilter GETTER_AND_SETTER_METHOD_FILTER = new GetterAndSetterMethodFilter(); 
-    private static final Map<Class<?>,ProxyFactory> PROXY_FACTORIES_CACHE = new HashMap<Class<?>, ProxyFactory>();
+    private static final Map<Class<?>,ProxyFactory> PROXY_FACTORIES_CACHE = new ConcurrentHashMap<Class<?>, ProxyFactory>();
+    private static final Map<Class<?>,Supplier<?>> GENERATED_PROXIES = new ConcurrentHashMap<Class<?>, Supplier<?>>();
+    private static final Map<Class<?>,Boolean> INITIALIZED_TEMPLATES = new ConcurrentHashMap<Class<?>, Boolean>();
 
     /**
      * Exception thrown when a getter for not loaded property is called
@@ -37,11 +46,26 @@ public final class SafeGetterProxyFactory {
          * @param m the (getter) method that was not allowed
          */
         public NotSetPropertyException(Method m) {
+            this(m.getName(), m.getDeclaringClass());
+        }
+
+        /**
+         * Constructor
+         * @param methodName the name of the (getter) method that was not allowed
+         * @param declaringClass the class declaring the method
+         */
+        public NotSetPropertyException(String methodName, Class<?> declaringClass) {
             // CHECKSTYLE:OFF:StringLiteralEquality FOR 1 LINE            
-            super("Calling method "+m.getName()+" on Object of "+m.getDeclaringClass()+" not allowed. Property not set.");
+            super("Calling method "+methodName+" on Object of "+declaringClass+" not allowed. Property not set.");
         }
     }
 
+    /**
+     * Marker interface of the safe getter subclasses generated at compile time
+     */
+    public interface SafeGetterProxy {
+    }
+
     /**
      * Handler for calls to not allowed getters and setters
      */
@@ -53,8 +77,9 @@ public final class SafeGetterProxyFactory {
                              Object[] args) {
             final String methodName = m.getName();
             if (methodName.startsWith(SETTER_PREFIX)) {
-                allowedGetters.add(methodName.replace(SETTER_PREFIX, GETTER_PREFIX));
-                allowedGetters.add(methodName.replace(SETTER_PREFIX, BOOLEAN_GETTER_PREFIX));
+                final String property = methodName.substring(SETTER_PREFIX.length());
+                allowedGetters.add(GETTER_PREFIX + property);
+                allowedGetters.add(BOOLEAN_GETTER_PREFIX + property);
             }
             try {
             	final Object returnValue = proceed.invoke(self, args);
@@ -73,8 +98,8 @@ public final class SafeGetterProxyFactory {
      */
     private static final class GetterAndSetterMethodFilter implements MethodFilter{
         public boolean isHandled(Method m) {
-        	return (isSetter(m.getName()) && Void.class.equals(m.getReturnType()) && m.getParameterCount()==1) ||
-        		(isGetter(m.getName()) && !Void.class.equals(m.getReturnType()) && m.getParameterCount()==0);
+        	return (isSetter(m.getName()) && void.class.equals(m.getReturnType()) && m.getParameterCount()==1) ||
+        		(isGetter(m.getName()) && !void.class.equals(m.getReturnType()) && m.getParameterCount()==0);
         }
         
         /**
@@ -111,15 +136,22 @@ public final class SafeGetterProxyFactory {
      * @return the {@link ProxyFactory}
      */
     public static ProxyFactory getProxyFactory(Class<?> clazz) {
-        ProxyFactory f = PROXY_FACTORIES_CACHE.get(clazz);
-        if (f==null) {
-            f = new ProxyFactory();
-            f.setSuperclass(clazz);
+        return PROXY_FACTORIES_CACHE.computeIfAbsent(clazz, c -> {
+            final ProxyFactory f = new ProxyFactory();
+            f.setSuperclass(c);
             f.setFilter(GETTER_AND_SETTER_METHOD_FILTER);
-            PROXY_FACTORIES_CACHE.put(clazz, f);
-        }
-        return f;
-        
+            return f;
+        });
+    }
+
+    /**
+     * Register the subclass generated at compile time for a class, used by {@link #createProxy(Class)} instead of a javassist proxy
+     * @param <T> the type of the objects
+     * @param clazz the class
+     * @param factory creates instances of the generated subclass
+     */
+    public static <T> void register(Class<T> clazz, Supplier<? extends T> factory) {
+        GENERATED_PROXIES.put(clazz, factory);
     }
     
     /**
@@ -128,7 +160,9 @@ public final class SafeGetterProxyFactory {
      * @return the base class of the proxied object (or the class of the object if it was no proxy)
      */
     public static Class<?> getClass(Object o) {
-        if (!ProxyFactory.isProxyClass(o.getClass())) {
+        if (o instanceof SafeGetterProxy || o instanceof DirtyTracking || o instanceof LazyReference) {
+            return o.getClass().getSuperclass();
+        } else if (!ProxyFactory.isProxyClass(o.getClass())) {
             return o.getClass();
         } else {
             return o.getClass().getSuperclass();
@@ -142,6 +176,10 @@ public final class SafeGetterProxyFactory {
      */
     @SuppressWarnings("unchecked")
     public static <T> T createProxy(Class<T> clazz) {
+        final Supplier<?> generated = getGeneratedProxy(clazz);
+        if (generated != null) {
+            return clazz.cast(generated.get());
+        }
         final ProxyFactory pf = getProxyFactory(clazz);
         try {
         	ProxyObject proxy = (ProxyObject)pf.create(new Class[0], new Object[0]);
@@ -165,6 +203,31 @@ public final class SafeGetterProxyFactory {
         }
     }
 
+    /**
+     * Get the factory of the subclass generated for a class, initializing the template of the class first,
+     * as the template registers the subclass in its static initializer
+     * @param clazz the class
+     * @return creates instances of the generated subclass, null if there is none
+     */
+    private static Supplier<?> getGeneratedProxy(Class<?> clazz) {
+        final Supplier<?> generated = GENERATED_PROXIES.get(clazz);
+        if (generated != null || INITIALIZED_TEMPLATES.containsKey(clazz)) {
+            return generated;
+        }
+        final EntityTemplate<?> template = Templates.forEntity(clazz);
+        if (template != null) {
+            final Class<?> templateClass = template.getTemplateClass();
+            try {
+                Class.forName(templateClass.getName(), true, templateClass.getClassLoader());
+            } catch (ClassNotFoundException e) {
+                // CHECKSTYLE:OFF:StringLiteralEquality FOR 1 LINE            
+                throw new RuntimeException("Error initializing template "+templateClass, e);
+            }
+        }
+        INITIALIZED_TEMPLATES.put(clazz, Boolean.TRUE);
+        return GENERATED_PROXIES.get(clazz);
+    }
+
     /**
      * Annotation to be placed on getters that always may be invoked,
      * so even when this property was not loaded these annotated getters 
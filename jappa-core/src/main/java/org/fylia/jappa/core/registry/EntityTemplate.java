@@ -0,0 +1,72 @@
+package org.fylia.jappa.core.registry;
+
+import java.util.List;
+import java.util.function.Supplier;
+
+import org.fylia.jappa.core.AbstractSpringJdbcDao;
+import org.fylia.jappa.core.PropertyDetail;
+
+/**
+ * Description of a generated template, as registered by a generated {@link TemplateRegistry}:
+ * the entity, its template and dao classes, its table and id type.
+ * @param <T> the type of the entity
+ * @author fylia
+ */
+public final class EntityTemplate<T> {
+    private final Class<T> entityClass;
+    private final Class<? extends AbstractSpringJdbcDao> templateClass;
+    private final Class<? extends AbstractSpringJdbcDao> daoClass;
+    private final String tableName;
+    private final Class<?> idType;
+    private final Supplier<List<PropertyDetail>> properties;
+
+    /**
+     * Constructor
+     * @param entityClass the class of the entity
+     * @param templateClass the generated template
+     * @param daoClass the dao extending the template, null if none was found while generating
+     * @param tableName the table of the entity
+     * @param idType the type of the id
+     * @param properties supplies the column metadata, only built on first access
+     */
+    public EntityTemplate(Class<T> entityClass, Class<? extends AbstractSpringJdbcDao> templateClass,
+            Class<? extends AbstractSpringJdbcDao> daoClass, String tableName, Class<?> idType,
+            Supplier<List<PropertyDetail>> properties) {
+        this.entityClass = entityClass;
+        this.templateClass = templateClass;
+        this.daoClass = daoClass;
+        this.tableName = tableName;
+        this.idType = idType;
+        this.properties = properties;
+    }
+
+    public Class<T> getEntityClass() {
+        return entityClass;
+    }
+
+    public Class<? extends AbstractSpringJdbcDao> getTemplateClass() {
+        return templateClass;
+    }
+
+    /**
+     * @return the dao extending the template, null if none was found while generating
+     */
+    public Class<? extends AbstractSpringJdbcDao> getDaoClass() {
+        return daoClass;
+    }
+
+    public String getTableName() {
+        return tableName;
+    }
+
+    public Class<?> getIdType() {
+        return idType;
+    }
+
+    /**
+     * @return the metadata of the mapped columns
+     */
+    public List<PropertyDetail> getProperties() {
+        return properties.get();
+    }
+}
@@ -0,0 +1,16 @@
+package org.fylia.jappa.core.registry;
+
+import java.util.List;
+
+/**
+ * Service provider listing the generated templates of a module.
+ * The processor generates an implementation per destination package and registers it
+ * in META-INF/services, it is looked up by {@link Templates} with the {@link java.util.ServiceLoader}.
+ * @author fylia
+ */
+public interface TemplateRegistry {
+    /**
+     * @return the generated templates
+     */
+    List<EntityTemplate<?>> getTemplates();
+}
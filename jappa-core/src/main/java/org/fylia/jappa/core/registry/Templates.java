@@ -0,0 +1,55 @@
+package org.fylia.jappa.core.registry;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.ServiceLoader;
+
+/**
+ * Lookup of the generated templates by entity class, without classpath scanning nor reflection:
+ * the {@link TemplateRegistry}s are loaded once, on first use, with the {@link ServiceLoader}.
+ * @author fylia
+ */
+public final class Templates {
+
+    private Templates() {
+    }
+
+    /**
+     * @param <T> the type of the entity
+     * @param entityClass the class of the entity
+     * @return the template generated for the entity, null if none
+     */
+    @SuppressWarnings("unchecked")
+    public static <T> EntityTemplate<T> forEntity(Class<T> entityClass) {
+        return (EntityTemplate<T>) Registered.BY_ENTITY.get(entityClass);
+    }
+
+    /**
+     * @return all the registered templates
+     */
+    public static Collection<EntityTemplate<?>> all() {
+        return Registered.BY_ENTITY.values();
+    }
+
+    private static Map<Class<?>, EntityTemplate<?>> load() {
+        final Map<Class<?>, EntityTemplate<?>> byEntity = new HashMap<>();
+        for (TemplateRegistry registry : ServiceLoader.load(TemplateRegistry.class, Templates.class.getClassLoader())) {
+            for (EntityTemplate<?> template : registry.getTemplates()) {
+                byEntity.put(template.getEntityClass(), template);
+            }
+        }
+        return Collections.unmodifiableMap(byEntity);
+    }
+
+    /**
+     * Holder of the registered templates, loaded on first lookup
+     */
+    private static final class Registered {
+        static final Map<Class<?>, EntityTemplate<?>> BY_ENTITY = load();
+
+        private Registered() {
+        }
+    }
+}
@@ -0,0 +1,18 @@
+package org.fylia.jappa.core.shard;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Marks an entity whose rows are spread over several databases: besides the template, a {@link ShardedDao}
+ * is generated that stores a row in the database chosen by a hash of its id columns.
+ * Only supported for an id assigned by the application (a database generated or allocated id is not unique
+ * over the shards) and not for reference data.
+ * @author fylia
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.TYPE)
+public @interface Sharded {
+}
@@ -0,0 +1,256 @@
+package org.fylia.jappa.core.shard;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+
+import javax.sql.DataSource;
+
+import org.fylia.jappa.core.AbstractSpringJdbcDao;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+/**
+ * Dao spreading the rows of an entity over several databases (shards), a template per shard.
+ * A row is stored in the shard chosen by a hash of its id columns, so a row is read from or written to a single shard
+ * when its id is known, while the queries over all rows run on all shards in parallel and merge their results.
+ * <p>
+ * The queries on several shards do not take part in a running transaction: they run on other threads, by default
+ * of a pool of the dao with a thread per shard, so the blocking queries do not hold the threads of the common pool.
+ * The templates of the shards are plain instances, not transactional proxies, so their {@code @Transactional}
+ * annotations do not apply: the reads run in auto commit, the writes in a transaction per shard, on its dataSource.
+ * The transactions of the shards are independent, a failing shard does not roll back the writes of the others.
+ * @param <K> the type of the id
+ * @param <T> the type of the entity
+ * @param <D> the type of the template used on each shard
+ * @author fylia
+ */
+public abstract class ShardedDao<K, T, D extends AbstractSpringJdbcDao> {
+    private static final long IDLE_THREAD_SECONDS = 60;
+    private static final AtomicInteger THREAD_COUNT = new AtomicInteger();
+
+    private volatile List<D> shards = Collections.emptyList();
+    private volatile Map<D, TransactionTemplate> transactions = Collections.emptyMap();
+    private volatile Executor executor;
+    private volatile ThreadPoolExecutor shardExecutor;
+
+    /**
+     * @return a new template, for one shard
+     */
+    protected abstract D createShard();
+
+    /**
+     * @param id the id of a row
+     * @return the hash of the id columns, the same for every run and JVM, see {@link #columnsHash(Object...)}
+     */
+    protected abstract int shardHash(K id);
+
+    /**
+     * Hash of the values of id columns, the same for every run and JVM: unlike their {@link Object#hashCode()},
+     * an enum is hashed by its name and a byte array by its content
+     * @param values the values of the id columns
+     * @return the hash
+     */
+    protected static int columnsHash(Object... values) {
+        int hash = 1;
+        for (Object value : values) {
+            final int valueHash;
+            if (value == null) {
+                valueHash = 0;
+            } else if (value instanceof Enum) {
+                valueHash = ((Enum<?>) value).name().hashCode();
+            } else if (value instanceof byte[]) {
+                valueHash = Arrays.hashCode((byte[]) value);
+            } else {
+                valueHash = value.hashCode();
+            }
+            hash = 31 * hash + valueHash;
+        }
+        return hash;
+    }
+
+    /**
+     * Set the databases of the shards, a template is created for each of them.
+     * The order matters: a row is always stored in the shard at the same index.
+     * @param dataSources the dataSources of the shards
+     */
+    public void setDataSources(List<DataSource> dataSources) {
+        final List<D> templates = new ArrayList<>(dataSources.size());
+        final Map<D, TransactionTemplate> shardTransactions = new IdentityHashMap<>();
+        for (DataSource dataSource : dataSources) {
+            final D template = createShard();
+            template.setDataSource(dataSource);
+            templates.add(template);
+            shardTransactions.put(template, new TransactionTemplate(new DataSourceTransactionManager(dataSource)));
+        }
+        final ThreadPoolExecutor previous = shardExecutor;
+        final int threads = Math.max(1, templates.size());
+        final ThreadPoolExecutor pool = new ThreadPoolExecutor(threads, threads, IDLE_THREAD_SECONDS, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(), task -> {
+                    final Thread thread = new Thread(task, "jappa-shard-" + THREAD_COUNT.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+        pool.allowCoreThreadTimeOut(true);
+        this.shardExecutor = pool;
+        this.transactions = shardTransactions;
+        this.shards = Collections.unmodifiableList(templates);
+        if (previous != null) {
+            previous.shutdown();
+        }
+    }
+
+    /**
+     * @param executor runs the queries on the shards, by default a pool of the dao with a thread per shard
+     */
+    public void setExecutor(Executor executor) {
+        this.executor = executor;
+    }
+
+    private Executor getExecutor() {
+        final Executor configured = executor;
+        return configured != null ? configured : shardExecutor;
+    }
+
+    /**
+     * @return the templates of the shards, in the order of their dataSources
+     */
+    public List<D> getShards() {
+        return shards;
+    }
+
+    /**
+     * @param id the id of a row
+     * @return the index of the shard storing the row
+     */
+    public int getShardIndex(K id) {
+        if (id == null) {
+            throw new IllegalArgumentException("A sharded row needs an id to find its shard");
+        }
+        if (shards.isEmpty()) {
+            throw new IllegalStateException("No shards, set the dataSources first");
+        }
+        return Math.floorMod(shardHash(id), shards.size());
+    }
+
+    /**
+     * @param id the id of a row
+     * @return the template of the shard storing the row
+     */
+    public D getShard(K id) {
+        return shards.get(getShardIndex(id));
+    }
+
+    /**
+     * Split items over the shards
+     * @param <E> the type of the items
+     * @param items the items, e.g. ids or rows
+     * @param idGetter gets the id of an item
+     * @return the items of each shard, by shard index, in the given order
+     */
+    protected <E> List<List<E>> byShard(Collection<E> items, Function<E, K> idGetter) {
+        final List<List<E>> byShard = new ArrayList<>(shards.size());
+        for (int i = 0; i < shards.size(); i++) {
+            byShard.add(new ArrayList<>());
+        }
+        for (E item : items) {
+            byShard.get(getShardIndex(idGetter.apply(item))).add(item);
+        }
+        return byShard;
+    }
+
+    /**
+     * Run a query on all shards in parallel
+     * @param <R> the type of the result of the query
+     * @param query the query, run with the template of each shard
+     * @return the results, by shard index
+     */
+    protected <R> List<R> onAllShards(Function<D, R> query) {
+        final List<D> templates = shards;
+        final Executor shardsExecutor = getExecutor();
+        final List<CompletableFuture<R>> results = new ArrayList<>(templates.size());
+        for (D template : templates) {
+            results.add(CompletableFuture.supplyAsync(() -> query.apply(template), shardsExecutor));
+        }
+        return join(results);
+    }
+
+    /**
+     * Run a query on the shards storing some items, in parallel
+     * @param <E> the type of the items
+     * @param <R> the type of the result of the query
+     * @param items the items, e.g. ids or rows
+     * @param idGetter gets the id of an item
+     * @param query the query, run with the template of each shard and the items stored in that shard
+     * @return the results of the shards with items
+     */
+    protected <E, R> List<R> onShards(Collection<E> items, Function<E, K> idGetter, BiFunction<D, List<E>, R> query) {
+        final List<D> templates = shards;
+        final List<List<E>> byShard = byShard(items, idGetter);
+        final Executor shardsExecutor = getExecutor();
+        final List<CompletableFuture<R>> results = new ArrayList<>(templates.size());
+        for (int i = 0; i < templates.size(); i++) {
+            final List<E> shardItems = byShard.get(i);
+            if (!shardItems.isEmpty()) {
+                final D template = templates.get(i);
+                results.add(CompletableFuture.supplyAsync(() -> query.apply(template, shardItems), shardsExecutor));
+            }
+        }
+        return join(results);
+    }
+
+    /**
+     * Write a row in its shard, in a transaction on the dataSource of the shard
+     * @param <R> the type of the result of the write
+     * @param id the id of the row
+     * @param write the write, run with the template of the shard
+     * @return the result of the write
+     */
+    protected <R> R inShardTransaction(K id, Function<D, R> write) {
+        final D template = getShard(id);
+        return transactions.get(template).execute(status -> write.apply(template));
+    }
+
+    /**
+     * Write items in the shards storing them, in parallel, each shard in a transaction on its dataSource
+     * @param <E> the type of the items
+     * @param <R> the type of the result of the write
+     * @param items the items, e.g. rows
+     * @param idGetter gets the id of an item
+     * @param write the write, run with the template of each shard and the items stored in that shard
+     * @return the results of the shards with items
+     */
+    protected <E, R> List<R> inShardTransactions(Collection<E> items, Function<E, K> idGetter, BiFunction<D, List<E>, R> write) {
+        final Map<D, TransactionTemplate> shardTransactions = transactions;
+        return onShards(items, idGetter,
+                (template, shardItems) -> shardTransactions.get(template).execute(status -> write.apply(template, shardItems)));
+    }
+
+    private static <R> List<R> join(List<CompletableFuture<R>> futures) {
+        final List<R> results = new ArrayList<>(futures.size());
+        try {
+            for (CompletableFuture<R> future : futures) {
+                results.add(future.join());
+            }
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw e;
+        }
+        return results;
+    }
+}
@@ -2,9 +2,13 @@ package org.fylia.jappa;
 
 import java.io.BufferedWriter;
 import java.io.IOException;
+import java.io.Writer;
+import java.util.Comparator;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.stream.Collectors;
 
 import javax.annotation.processing.AbstractProcessor;
 import javax.annotation.processing.Messager;
@@ -26,12 +30,21 @@ import javax.persistence.AttributeOverrides;
 import javax.persistence.Column;
 import javax.persistence.Embeddable;
 import javax.persistence.EmbeddedId;
+import javax.persistence.Enumerated;
 import javax.persistence.GeneratedValue;
 import javax.persistence.Id;
 import javax.persistence.JoinColumn;
 import javax.persistence.ManyToOne;
+import javax.persistence.OneToMany;
+import javax.persistence.SequenceGenerator;
+import javax.persistence.TableGenerator;
 import javax.tools.Diagnostic.Kind;
+import javax.tools.FileObject;
 import javax.tools.JavaFileObject;
+import javax.tools.StandardLocation;
+
+import org.fylia.jappa.core.proxy.SafeGetterProxyFactory.SafeGetter;
+import org.fylia.jappa.core.registry.TemplateRegistry;
 
 import freemarker.template.Configuration;
 import freemarker.template.Template;
@@ -52,6 +65,7 @@ public class JappaProcessor extends AbstractProcessor {
     private Map<String,String> options;
     private Types typeUtil;
     private Configuration configuration;
+    private boolean registryGenerated;
     @Override
     public synchronized void init(ProcessingEnvironment processingEnv) {
         super.init(processingEnv);
@@ -86,7 +100,6 @@ public class JappaProcessor extends AbstractProcessor {
                 }
             }
             for (TypeDetails td : entities.values()) {
-                messager.printMessage(Kind.WARNING, "Generating template for "+td.getName());
                 if (td.isEntity()) {
                     if (td.getParentType()!=null) {
                         TypeDetails parent = entities.get(td.getParentType());
@@ -94,10 +107,25 @@ public class JappaProcessor extends AbstractProcessor {
                             parent.getProperties().forEach(td.getProperties()::putIfAbsent);
                         }
                     }
-                    td.getProperties().forEach((s,pd)->pd.setReferenceType(entities.get(pd.getType().toString())));
+                    td.getProperties().forEach((s,pd)->pd.setReferenceType(entities.get(pd.getReferenceTypeName())));
+                }
+            }
+            // all references are resolved before generating, the templates look into the referenced types
+            for (TypeDetails td : entities.values()) {
+                if (td.isEntity()) {
+                    messager.printMessage(Kind.WARNING, "Generating template for "+td.getName());
+                    if (td.isShardedAnnotated() && !td.isSharded()) {
+                        messager.printMessage(Kind.WARNING, "No sharded dao for "+td.getName()
+                                +": sharding needs a single id property assigned by the application and is not supported for reference data");
+                    }
                     generatePropertyConstantsInterface(td, entities);
                 }
             }
+            if (!entities.isEmpty() && !registryGenerated) {
+                findDaos(entities, roundEnv);
+                generateRegistry(entities);
+                registryGenerated = true;
+            }
         } catch (RuntimeException e) {
             for (StackTraceElement ste: e.getStackTrace()) {
                 messager.printMessage(Kind.ERROR, ste.getClassName()+":"+ste.getMethodName()+"("+ste.getLineNumber()+")");
@@ -117,6 +145,8 @@ public class JappaProcessor extends AbstractProcessor {
             ManyToOne manyToOneAnnotation = enclosedEl.getAnnotation(ManyToOne.class);
             JoinColumn joinColumnAnnotation = enclosedEl.getAnnotation(JoinColumn.class);
             GeneratedValue generatedValueAnnotation = enclosedEl.getAnnotation(GeneratedValue.class);
+            Enumerated enumeratedAnnotation = enclosedEl.getAnnotation(Enumerated.class);
+            OneToMany oneToManyAnnotation = enclosedEl.getAnnotation(OneToMany.class);
             if (enclosedEl.getKind() == ElementKind.FIELD
                     && !enclosedEl.getModifiers().contains(
                             Modifier.STATIC)
@@ -128,9 +158,13 @@ public class JappaProcessor extends AbstractProcessor {
                 }
                 details.setType(enclosedEl.asType());
                 details.setId(idAnnotation!=null);
+                if (enumeratedAnnotation!=null) {
+                    details.setEnumType(enumeratedAnnotation.value());
+                }
                 if (generatedValueAnnotation!=null) {
                     details.setGenerationType(generatedValueAnnotation.strategy());
                     details.setGenerator(generatedValueAnnotation.generator());
+                    fillGenerator(details, enclosedEl, classElement);
                 }
                 messager.printMessage(Kind.WARNING, "Property found for type "+td.getName()+"."+details.getName()+" (col:"+details.getColumnName()+" id?:"+details.isId()+")");
             } else if (enclosedEl.getKind() == ElementKind.FIELD
@@ -144,6 +178,7 @@ public class JappaProcessor extends AbstractProcessor {
                     if (generatedValueAnnotation!=null) {
                         details.setGenerationType(generatedValueAnnotation.strategy());
                         details.setGenerator(generatedValueAnnotation.generator());
+                        fillGenerator(details, enclosedEl, classElement);
                     }
                     messager.printMessage(Kind.WARNING, "Property found for type "+td.getName()+"."+details.getName()+" (col:"+details.getColumnName()+" id?:"+details.isId()+")");
             } else if (enclosedEl.getKind() == ElementKind.FIELD
@@ -167,6 +202,13 @@ public class JappaProcessor extends AbstractProcessor {
                 details.setType(enclosedEl.asType());
                 messager.printMessage(Kind.WARNING, "Property found "+td.getName()+"."+details.getName()+" (col:"+details.getColumnName()+" id?:"+details.isId()+")");
                     //writeNewProperty(bw, propertyName);
+            } else if (enclosedEl.getKind() == ElementKind.FIELD
+                        && !enclosedEl.getModifiers().contains(Modifier.STATIC)
+                        && oneToManyAnnotation!=null && !oneToManyAnnotation.mappedBy().isEmpty())  {
+                PropertyDetails details = td.getProperty(propertyName.toString());
+                details.fillFromOneToMany(oneToManyAnnotation);
+                details.setType(enclosedEl.asType());
+                messager.printMessage(Kind.WARNING, "Property found "+td.getName()+"."+details.getName()+" (mapped by:"+details.getMappedBy()+")");
             } else if (enclosedEl.getKind() == ElementKind.METHOD) {
                 final String methodName = propertyName.toString();
                 if ((methodName.startsWith("get")
@@ -193,6 +235,7 @@ public class JappaProcessor extends AbstractProcessor {
                         final String propName = (methodName.substring(3, 4).toLowerCase()+methodName.substring(4));
                         PropertyDetails details = td.getProperty(propName.toString());
                         details.setGetterName(methodName);
+                        details.setSafeGetter(enclosedEl.getAnnotation(SafeGetter.class)!=null);
                         messager.printMessage(Kind.WARNING, "Getter found for property "+td.getName()+"."+details.getName()+" (col:"+details.getColumnName()+" id?:"+details.isId()+")");
                     } else if (methodName.startsWith("is")) {
                         if(emeth.getParameterTypes().size() != 0) {
@@ -204,6 +247,7 @@ public class JappaProcessor extends AbstractProcessor {
                         final String propName = (methodName.substring(2, 3).toLowerCase()+methodName.substring(3));
                         PropertyDetails details = td.getProperty(propName.toString());
                         details.setGetterName(methodName);
+                        details.setSafeGetter(enclosedEl.getAnnotation(SafeGetter.class)!=null);
                         messager.printMessage(Kind.WARNING, "Getter found for property "+td.getName()+"."+details.getName()+" (col:"+details.getColumnName()+" id?:"+details.isId()+")");
                     }
                     //writeNewProperty(bw, propName);
@@ -212,6 +256,26 @@ public class JappaProcessor extends AbstractProcessor {
         }
     }
 
+    /**
+     * Read the sequence or table generator of a generated id, declared on the id field or on the class
+     */
+    private void fillGenerator(PropertyDetails details, Element idEl, TypeElement classElement) {
+        SequenceGenerator sequenceGenerator = idEl.getAnnotation(SequenceGenerator.class);
+        if (sequenceGenerator==null) {
+            sequenceGenerator = classElement.getAnnotation(SequenceGenerator.class);
+        }
+        if (sequenceGenerator!=null) {
+            details.fillFromSequenceGenerator(sequenceGenerator);
+        }
+        TableGenerator tableGenerator = idEl.getAnnotation(TableGenerator.class);
+        if (tableGenerator==null) {
+            tableGenerator = classElement.getAnnotation(TableGenerator.class);
+        }
+        if (tableGenerator!=null) {
+            details.fillFromTableGenerator(tableGenerator);
+        }
+    }
+
     private void getEmbeddedPropertyDetails(TypeDetails td, PropertyDetails idDetails, Element parentEl) {
         if (idDetails.getType().getKind() != TypeKind.DECLARED) {
             throw new IllegalArgumentException("Property "+idDetails+" is not embeddable : "+idDetails.getType().toString());
@@ -240,6 +304,10 @@ public class JappaProcessor extends AbstractProcessor {
                     details.setColumnName(propertyName.toString());
                 }
                 details.setType(enclosedEl.asType());
+                Enumerated enumeratedAnnotation = enclosedEl.getAnnotation(Enumerated.class);
+                if (enumeratedAnnotation!=null) {
+                    details.setEnumType(enumeratedAnnotation.value());
+                }
                 details.setNested(true);
                 details.setId(true);
                 details.setEmbedded(true);
@@ -334,30 +402,66 @@ public class JappaProcessor extends AbstractProcessor {
     }
     
 
-    @Override
-    public SourceVersion getSupportedSourceVersion() {
-        return SourceVersion.latestSupported();
+    /**
+     * Find the concrete daos extending the generated templates among the compiled classes.
+     * The templates are not generated yet in the first round, so the superclass is matched on its simple name.
+     */
+    private void findDaos(Map<String, TypeDetails> entities, RoundEnvironment roundEnv) {
+        final Map<String, TypeDetails> byTemplateName = new HashMap<>();
+        for (TypeDetails td : entities.values()) {
+            if (td.isEntity()) {
+                byTemplateName.put(td.getSimpleName() + "JdbcTemplate", td);
+            }
+        }
+        for (Element e : roundEnv.getRootElements()) {
+            if (e.getKind() == ElementKind.CLASS && e.getModifiers().contains(Modifier.PUBLIC)
+                    && !e.getModifiers().contains(Modifier.ABSTRACT)) {
+                final String superclass = ((TypeElement) e).getSuperclass().toString();
+                final TypeDetails td = byTemplateName.get(superclass.substring(superclass.lastIndexOf('.') + 1));
+                if (td != null && td.getDaoName() == null) {
+                    td.setDaoName(((TypeElement) e).getQualifiedName().toString());
+                }
+            }
+        }
     }
-    
-    /*
-       private class MyObjectExtractor implements ResultSetExtractor{
 
-        public Object extractData(ResultSet rs) throws SQLException, DataAccessException {
-            Map<Integer, MyObject> map = new HashMap<Integer, MyObject>();
-            MyObject myObject = null;
-            while (rs.next()) {
-                Integer id = rs.getInt("ID);
-                myObject = map.get(id);
-              if(myObject == null){
-                  String description = rs,getString("Description");
-                  myObject = new MyObject(id, description);
-                  map.put(id, myObject);
-              }
-          MyFoo foo = new MyFoo(rs.getString("Foo"), rs.getString("Bar"));
-          myObject.add(myFoo);
+    /**
+     * Generate the registry of the templates, its ServiceLoader registration and,
+     * when Spring is on the classpath, a configuration registering the daos
+     */
+    private void generateRegistry(Map<String, TypeDetails> entities) {
+        final String destinationPackage = options.get("destinationPackage");
+        final List<TypeDetails> types = entities.values().stream().filter(TypeDetails::isEntity)
+                .sorted(Comparator.comparing(TypeDetails::getName)).collect(Collectors.toList());
+        final Map<String, Object> root = new HashMap<String, Object>();
+        root.put("options",  options);
+        root.put("types", types);
+        try {
+            generateSource(destinationPackage + ".JappaTemplateRegistry", "TemplateRegistry.ftl", root);
+            if (processingEnv.getElementUtils().getTypeElement("org.springframework.context.annotation.Configuration") != null) {
+                generateSource(destinationPackage + ".JappaDaoConfiguration", "DaoConfiguration.ftl", root);
+            }
+            final FileObject services = processingEnv.getFiler().createResource(StandardLocation.CLASS_OUTPUT, "",
+                    "META-INF/services/" + TemplateRegistry.class.getName());
+            try (Writer writer = services.openWriter()) {
+                writer.write(destinationPackage + ".JappaTemplateRegistry\n");
             }
-            return new ArrayList<MyObject>(map.values());;
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        } catch (TemplateException e) {
+            throw new RuntimeException(e);
         }
-    }    
-     */
+    }
+
+    private void generateSource(String className, String templateName, Map<String, Object> root) throws IOException, TemplateException {
+        final JavaFileObject jfo = processingEnv.getFiler().createSourceFile(className);
+        try (Writer writer = new BufferedWriter(jfo.openWriter())) {
+            configuration.getTemplate(templateName).process(root, writer);
+        }
+    }
+
+    @Override
+    public SourceVersion getSupportedSourceVersion() {
+        return SourceVersion.latestSupported();
+    }
 }
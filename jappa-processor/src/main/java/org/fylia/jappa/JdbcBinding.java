@@ -0,0 +1,143 @@
+package org.fylia.jappa;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.persistence.EnumType;
+
+/**
+ * How a java type is read from a ResultSet and written to a PreparedStatement:
+ * the typed getXxx/setXxx accessor, the java.sql.Types constant used for null values,
+ * and the conversion between the value the accessor works with and the java type.
+ * @author fylia
+ */
+public class JdbcBinding {
+	private static final Map<String, JdbcBinding> BINDINGS = new HashMap<>();
+	/** primitive type -> wrapper type */
+	private static final Map<String, String> BOXED_TYPES = new HashMap<>();
+	static {
+		add(new JdbcBinding("String", "VARCHAR", "java.lang.String"), "java.lang.String");
+		add(new JdbcBinding("BigDecimal", "DECIMAL", "java.math.BigDecimal"), "java.math.BigDecimal");
+		add(new JdbcBinding("Int", "INTEGER", "int"), "int", "java.lang.Integer");
+		add(new JdbcBinding("Long", "BIGINT", "long"), "long", "java.lang.Long");
+		add(new JdbcBinding("Short", "SMALLINT", "short"), "short", "java.lang.Short");
+		add(new JdbcBinding("Byte", "TINYINT", "byte"), "byte", "java.lang.Byte");
+		add(new JdbcBinding("Boolean", "BOOLEAN", "boolean"), "boolean", "java.lang.Boolean");
+		add(new JdbcBinding("Double", "DOUBLE", "double"), "double", "java.lang.Double");
+		add(new JdbcBinding("Float", "REAL", "float"), "float", "java.lang.Float");
+		add(new JdbcBinding("Bytes", "VARBINARY", "byte[]"), "byte[]");
+		add(new JdbcBinding("Date", "DATE", "java.sql.Date"), "java.sql.Date");
+		add(new JdbcBinding("Time", "TIME", "java.sql.Time"), "java.sql.Time");
+		add(new JdbcBinding("Timestamp", "TIMESTAMP", "java.sql.Timestamp"), "java.sql.Timestamp");
+		add(new JdbcBinding("Timestamp", "TIMESTAMP", "java.sql.Timestamp", "%s", "new java.sql.Timestamp(%s.getTime())"), "java.util.Date");
+		add(new JdbcBinding("Date", "DATE", "java.sql.Date", "%s.toLocalDate()", "java.sql.Date.valueOf(%s)"), "java.time.LocalDate");
+		add(new JdbcBinding("Time", "TIME", "java.sql.Time", "%s.toLocalTime()", "java.sql.Time.valueOf(%s)"), "java.time.LocalTime");
+		add(new JdbcBinding("Timestamp", "TIMESTAMP", "java.sql.Timestamp", "%s.toLocalDateTime()", "java.sql.Timestamp.valueOf(%s)"), "java.time.LocalDateTime");
+		add(new JdbcBinding("Timestamp", "TIMESTAMP", "java.sql.Timestamp", "%s.toInstant()", "java.sql.Timestamp.from(%s)"), "java.time.Instant");
+		BOXED_TYPES.put("int", "java.lang.Integer");
+		BOXED_TYPES.put("long", "java.lang.Long");
+		BOXED_TYPES.put("short", "java.lang.Short");
+		BOXED_TYPES.put("byte", "java.lang.Byte");
+		BOXED_TYPES.put("boolean", "java.lang.Boolean");
+		BOXED_TYPES.put("double", "java.lang.Double");
+		BOXED_TYPES.put("float", "java.lang.Float");
+		BOXED_TYPES.put("char", "java.lang.Character");
+	}
+	private static void add(JdbcBinding binding, String... javaTypes) {
+		for (String javaType : javaTypes) {
+			BINDINGS.put(javaType, binding);
+		}
+	}
+
+	private final String accessor;
+	private final String sqlType;
+	private final String jdbcValueType;
+	private final String fromJdbcPattern;
+	private final String toJdbcPattern;
+
+	private JdbcBinding(String accessor, String sqlType, String jdbcValueType) {
+		this(accessor, sqlType, jdbcValueType, "%s", "%s");
+	}
+
+	private JdbcBinding(String accessor, String sqlType, String jdbcValueType, String fromJdbcPattern, String toJdbcPattern) {
+		this.accessor = accessor;
+		this.sqlType = sqlType;
+		this.jdbcValueType = jdbcValueType;
+		this.fromJdbcPattern = fromJdbcPattern;
+		this.toJdbcPattern = toJdbcPattern;
+	}
+
+	/**
+	 * Get the binding for a java type
+	 * @param type the java type
+	 * @param enumType how an enum is stored, null for the JPA default (ordinal)
+	 * @param enumValuesConstant the name of the constant holding the values of an enum stored by ordinal
+	 * @return the binding, null if the type has no typed accessor and should be read and written as Object
+	 */
+	public static JdbcBinding forType(TypeMirror type, EnumType enumType, String enumValuesConstant) {
+		if (type.getKind()==TypeKind.DECLARED && ((DeclaredType)type).asElement().getKind()==ElementKind.ENUM) {
+			if (enumType==EnumType.STRING) {
+				return new JdbcBinding("String", "VARCHAR", "java.lang.String", type+".valueOf(%s)", "%s.name()");
+			}
+			return new JdbcBinding("Int", "INTEGER", "int", enumValuesConstant+"[%s]", "%s.ordinal()");
+		}
+		return BINDINGS.get(type.toString());
+	}
+
+	/**
+	 * @param type a java type
+	 * @return the wrapper type for a primitive, the type itself otherwise
+	 */
+	public static String boxed(String type) {
+		return BOXED_TYPES.getOrDefault(type, type);
+	}
+
+	/**
+	 * @return the suffix of the typed getXxx/setXxx methods of ResultSet/PreparedStatement
+	 */
+	public String getAccessor() {
+		return accessor;
+	}
+	/**
+	 * @return the name of the java.sql.Types constant
+	 */
+	public String getSqlType() {
+		return sqlType;
+	}
+	/**
+	 * @return the type the accessor works with
+	 */
+	public String getJdbcValueType() {
+		return jdbcValueType;
+	}
+	/**
+	 * @return if the accessor works with a primitive, so null values are detected with wasNull
+	 */
+	public boolean isPrimitive() {
+		return BOXED_TYPES.containsKey(jdbcValueType);
+	}
+	/**
+	 * @return if the value of the accessor needs a conversion to the java type
+	 */
+	public boolean isConverted() {
+		return !"%s".equals(fromJdbcPattern);
+	}
+	/**
+	 * @param jdbcValue the (not null) expression returned by the accessor
+	 * @return the expression converting it to the java type
+	 */
+	public String fromJdbc(String jdbcValue) {
+		return String.format(fromJdbcPattern, jdbcValue);
+	}
+	/**
+	 * @param value the (not null) expression of the java type
+	 * @return the expression converting it to the type of the accessor
+	 */
+	public String toJdbc(String value) {
+		return String.format(toJdbcPattern, value);
+	}
+}
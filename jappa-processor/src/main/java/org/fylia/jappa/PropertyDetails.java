@@ -1,19 +1,33 @@
 package org.fylia.jappa;
 
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.type.DeclaredType;
 import javax.lang.model.type.TypeKind;
 import javax.lang.model.type.TypeMirror;
 import javax.persistence.Column;
 import javax.persistence.EmbeddedId;
+import javax.persistence.EnumType;
+import javax.persistence.FetchType;
 import javax.persistence.GenerationType;
 import javax.persistence.Id;
 import javax.persistence.JoinColumn;
 import javax.persistence.ManyToOne;
+import javax.persistence.OneToMany;
+import javax.persistence.SequenceGenerator;
+import javax.persistence.TableGenerator;
 
 public class PropertyDetails {
 	public enum PropertyType { SIMPLE, MANY_TO_ONE, MANY_TO_MANY, ONE_TO_MANY };
 	private boolean isId;
 	private GenerationType generationType;
 	private String generator;
+	private String sequenceName="";
+	private String generatorTable="";
+	private String generatorPkColumnName="";
+	private String generatorValueColumnName="";
+	private String generatorPkColumnValue="";
+	private long generatorInitialValue;
+	private int allocationSize=50;
 	private boolean embedded;
 	private boolean nested;
 	private String name;
@@ -33,6 +47,10 @@ public class PropertyDetails {
 	private PropertyType propertyType;
 	private String referencedColumnName="";
 	private TypeDetails referenceType;
+	private EnumType enumType;
+	private String mappedBy="";
+	private boolean safeGetter;
+	private boolean lazy;
 	
 	private String typeAsString() {
 		return type.toString();
@@ -56,6 +74,43 @@ public class PropertyDetails {
 	public void setGenerator(String generator) {
 		this.generator = generator;
 	}
+	public String getSequenceName() {
+		return sequenceName;
+	}
+	public String getGeneratorTable() {
+		return generatorTable;
+	}
+	public String getGeneratorPkColumnName() {
+		return generatorPkColumnName;
+	}
+	public String getGeneratorValueColumnName() {
+		return generatorValueColumnName;
+	}
+	public String getGeneratorPkColumnValue() {
+		return generatorPkColumnValue;
+	}
+	public long getGeneratorInitialValue() {
+		return generatorInitialValue;
+	}
+	/**
+	 * @return the number of ids reserved at once by a sequence or table generator
+	 */
+	public int getAllocationSize() {
+		return allocationSize;
+	}
+	public void fillFromSequenceGenerator(SequenceGenerator sequenceGenerator) {
+		sequenceName = sequenceGenerator.sequenceName();
+		generatorInitialValue = sequenceGenerator.initialValue();
+		allocationSize = sequenceGenerator.allocationSize();
+	}
+	public void fillFromTableGenerator(TableGenerator tableGenerator) {
+		generatorTable = tableGenerator.table();
+		generatorPkColumnName = tableGenerator.pkColumnName();
+		generatorValueColumnName = tableGenerator.valueColumnName();
+		generatorPkColumnValue = tableGenerator.pkColumnValue();
+		generatorInitialValue = tableGenerator.initialValue();
+		allocationSize = tableGenerator.allocationSize();
+	}
 	public String getName() {
 		return name;
 	}
@@ -168,6 +223,21 @@ public class PropertyDetails {
 	public void setNested(boolean nested) {
 		this.nested = nested;
 	}
+	/**
+	 * @return if the getter is annotated with SafeGetter, so it may be called before the setter
+	 */
+	public boolean isSafeGetter() {
+		return safeGetter;
+	}
+	public void setSafeGetter(boolean safeGetter) {
+		this.safeGetter = safeGetter;
+	}
+	/**
+	 * @return if the many to one reference is mapped to a lazy reference, loaded on its first getter call
+	 */
+	public boolean isLazy() {
+		return lazy && propertyType==PropertyType.MANY_TO_ONE && referenceType!=null && referenceType.isLazyLoadable();
+	}
 	public void setReferenceType(TypeDetails referenceType) {
         this.referenceType = referenceType;
     }
@@ -216,19 +286,95 @@ public class PropertyDetails {
 		updatable = joinColumn.updatable();
 		table = joinColumn.table();
 		referencedColumnName = joinColumn.referencedColumnName();
+		lazy = manyToOne.fetch()==FetchType.LAZY;
 		embedded = false;
 		
 	}
-	public String getJdbcType() {
-		if (type.getKind()==TypeKind.DECLARED) {
-			String typeAsString = type.toString();
-			if (!typeAsString.equals("java.lang.String") && !typeAsString.equals("java.math.BigDecimal")) {
-				return "Object";
-			}
-			return typeAsString.replaceAll(".*\\.", "");
-		} else {
-			return type.getKind().name().substring(0, 1)+type.getKind().name().substring(1).toLowerCase();
+	public void fillFromOneToMany(OneToMany oneToMany) {
+		propertyType = PropertyType.ONE_TO_MANY;
+		mappedBy = oneToMany.mappedBy();
+		embedded = false;
+	}
+	public String getMappedBy() {
+		return mappedBy;
+	}
+	/**
+	 * @return the name of the type that could be an entity referenced by the property:
+	 * the element type for a one to many collection, the type of the property otherwise
+	 */
+	public String getReferenceTypeName() {
+		if (type==null) {
+			return null;
+		}
+		if (propertyType==PropertyType.ONE_TO_MANY && type.getKind()==TypeKind.DECLARED
+				&& !((DeclaredType)type).getTypeArguments().isEmpty()) {
+			return ((DeclaredType)type).getTypeArguments().get(0).toString();
+		}
+		return type.toString();
+	}
+	public EnumType getEnumType() {
+		return enumType;
+	}
+	public void setEnumType(EnumType enumType) {
+		this.enumType = enumType;
+	}
+	/**
+	 * @return the type of the column value: the type of the id of the referenced entity for a many to one,
+	 * the type of the property otherwise
+	 */
+	public TypeMirror getColumnType() {
+		if (propertyType==PropertyType.MANY_TO_ONE && referenceType!=null && referenceType.getIdDetails()!=null) {
+			return referenceType.getIdDetails().getType();
+		}
+		return type;
+	}
+	/**
+	 * @return the wrapper type of the column value if it's a primitive, the column type otherwise
+	 */
+	public String getBoxedColumnTypeName() {
+		return JdbcBinding.boxed(getColumnType().toString());
+	}
+	/**
+	 * @return how the column value is read and written, null if it is read and written as Object
+	 */
+	public JdbcBinding getBinding() {
+		if (propertyType==PropertyType.MANY_TO_ONE && referenceType!=null && referenceType.getIdDetails()!=null) {
+			return referenceType.getIdDetails().getBinding();
 		}
+		return JdbcBinding.forType(type, enumType, getEnumValuesConstant());
+	}
+	/**
+	 * @return if the property is an enum stored by ordinal, needing a constant with the enum values
+	 */
+	public boolean isOrdinalEnum() {
+		return propertyType!=PropertyType.MANY_TO_ONE && type.getKind()==TypeKind.DECLARED
+				&& ((DeclaredType)type).asElement().getKind()==ElementKind.ENUM && enumType!=EnumType.STRING;
+	}
+	/**
+	 * @return the name of the generated constant holding the values of an enum stored by ordinal
+	 */
+	public String getEnumValuesConstant() {
+		return name.replace('.', '_').toUpperCase()+"_VALUES";
+	}
+	/**
+	 * @return the suffix of the typed setXxx/getXxx methods of PreparedStatement/ResultSet for the column value
+	 */
+	public String getJdbcAccessor() {
+		final JdbcBinding binding = getBinding();
+		return binding==null?"Object":binding.getAccessor();
+	}
+	/**
+	 * @return the name of the java.sql.Types constant for the column value
+	 */
+	public String getSqlType() {
+		final JdbcBinding binding = getBinding();
+		return binding==null?"OTHER":binding.getSqlType();
+	}
+	/**
+	 * @return if the getter of the property directly returns a primitive column value
+	 */
+	public boolean isPrimitiveColumn() {
+		return !nested && propertyType!=PropertyType.MANY_TO_ONE && type.getKind().isPrimitive();
 	}
 	public String getParentProperty() {
 		if (!isNested()) {
@@ -1,18 +1,32 @@
 package org.fylia.jappa;
 
+import java.beans.Introspector;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
+import java.util.Set;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
+import javax.lang.model.element.Modifier;
 import javax.lang.model.element.PackageElement;
 import javax.lang.model.element.TypeElement;
 import javax.lang.model.type.TypeMirror;
 import javax.persistence.Embeddable;
 import javax.persistence.Entity;
+import javax.persistence.GenerationType;
 import javax.persistence.Table;
 
+import org.fylia.jappa.core.cache.Cached;
+import org.fylia.jappa.core.cache.ReferenceData;
+import org.fylia.jappa.core.dialect.Dialect;
+import org.fylia.jappa.core.shard.Sharded;
+
 public class TypeDetails {
+	private static final List<String> INTEGRAL_ID_TYPES = Arrays.asList("java.lang.Long", "java.lang.Integer", "java.lang.Short");
 	private final boolean entity;
 	private final boolean embeddable;
 	private final String name;
@@ -21,7 +35,12 @@ public class TypeDetails {
 	private final String tableName;
 	private final String parentType;
 	private final TypeMirror type;
+	private final int cacheSize;
+	private final Long referenceDataRefreshSeconds;
+	private final boolean extendable;
+	private final boolean shardedAnnotated;
 	private final Map<String, PropertyDetails> properties = new LinkedHashMap<>();
+	private String daoName;
 	public TypeDetails(TypeElement classElement) {
 		super();
 		entity = classElement.getAnnotation(Entity.class)!=null;
@@ -33,6 +52,12 @@ public class TypeDetails {
                 .getEnclosingElement();
 		packageName = packageElement.getQualifiedName().toString();
 		this.type = classElement.asType();
+		extendable = !classElement.getModifiers().contains(Modifier.FINAL) && !classElement.getModifiers().contains(Modifier.ABSTRACT);
+		final Cached cachedAnnotation = classElement.getAnnotation(Cached.class);
+		cacheSize = cachedAnnotation==null?0:cachedAnnotation.maxSize();
+		final ReferenceData referenceDataAnnotation = classElement.getAnnotation(ReferenceData.class);
+		referenceDataRefreshSeconds = referenceDataAnnotation==null?null:referenceDataAnnotation.refreshSeconds();
+		shardedAnnotated = classElement.getAnnotation(Sharded.class)!=null;
 		Table tableAnnotation = classElement.getAnnotation(Table.class);
 		if (tableAnnotation!=null) {
 			StringBuilder tableName = new StringBuilder();
@@ -65,6 +90,23 @@ public class TypeDetails {
 	public PropertyDetails getProperty(String propertyName) {
 		return properties.computeIfAbsent(propertyName.toString(), pn->new PropertyDetails().withName(pn));
 	}
+	/**
+	 * @return the properties stored in a column of the table (or embedded), one to many collections excluded
+	 */
+	public List<PropertyDetails> getColumnProperties() {
+		return properties.values().stream()
+				.filter(prop->prop.getPropertyType()!=null && prop.getPropertyType()!=PropertyDetails.PropertyType.ONE_TO_MANY)
+				.collect(Collectors.toList());
+	}
+	/**
+	 * @return the one to many collections mapped by a many to one reference of an entity with a single id column
+	 */
+	public List<PropertyDetails> getOneToManyProperties() {
+		return properties.values().stream()
+				.filter(prop->prop.getPropertyType()==PropertyDetails.PropertyType.ONE_TO_MANY && prop.getReferenceType()!=null
+						&& prop.getReferenceType().getProperties().containsKey(prop.getMappedBy()))
+				.collect(Collectors.toList());
+	}
 	public List<PropertyDetails> getAllIdDetails() {
 		return properties.values().stream().filter(PropertyDetails::isId).collect(Collectors.toList());
 	}
@@ -72,12 +114,237 @@ public class TypeDetails {
 	    return properties.values().stream().filter(prop->prop.isId() && (!prop.isEmbedded() || prop.isNested()))
 	                .collect(Collectors.toList());
 	}
+	/**
+	 * @return the properties read from their own column by the row mapper, many to one references excluded
+	 */
+	public List<PropertyDetails> getMappedColumnDetails() {
+		return getColumnProperties().stream()
+				.filter(prop->(!prop.isEmbedded() || prop.isNested()) && prop.getPropertyType()!=PropertyDetails.PropertyType.MANY_TO_ONE)
+				.collect(Collectors.toList());
+	}
+	/**
+	 * @return the columns written besides the id columns: the properties other than the id, except the references
+	 * mapped on id columns (e.g. the many to one references of an embedded id), whose column is written with the id
+	 */
+	public List<PropertyDetails> getDetailColumnDetails() {
+		final Set<String> idColumns = getPureIdColumnDetails().stream().map(TypeDetails::columnKey).collect(Collectors.toSet());
+		return getDetailPropertyDetails().stream().filter(prop->!idColumns.contains(columnKey(prop))).collect(Collectors.toList());
+	}
+	/**
+	 * @return the properties other than the id, including the references mapped on id columns
+	 */
+	public List<PropertyDetails> getDetailPropertyDetails() {
+		return getColumnProperties().stream().filter(prop->!prop.isId()).collect(Collectors.toList());
+	}
+	private static String columnKey(PropertyDetails prop) {
+		return prop.getColumnName()==null ? null : prop.getColumnName().toLowerCase(Locale.ROOT);
+	}
+	/**
+	 * @return if the entity has a single id column with a value generated by the database (identity column)
+	 */
+	public boolean isGeneratedId() {
+		final List<PropertyDetails> idColumns = getPureIdColumnDetails();
+		return idColumns.size()==1 && !idColumns.get(0).isNested() && idColumns.get(0).getGenerationType()!=null
+				&& !isAllocatedId();
+	}
+	/**
+	 * @return if the id is assigned by the application, neither generated by the database nor allocated
+	 */
+	public boolean isAssignedId() {
+		return !isGeneratedId() && !isAllocatedId();
+	}
+	/**
+	 * @return if the entity has a single integral id column allocated from a sequence or a table before the insert
+	 */
+	public boolean isAllocatedId() {
+		final List<PropertyDetails> idColumns = getPureIdColumnDetails();
+		if (idColumns.size()!=1 || idColumns.get(0).isNested()) {
+			return false;
+		}
+		final PropertyDetails idColumn = idColumns.get(0);
+		return (idColumn.getGenerationType()==GenerationType.SEQUENCE || idColumn.getGenerationType()==GenerationType.TABLE)
+				&& INTEGRAL_ID_TYPES.contains(idColumn.getBoxedColumnTypeName());
+	}
+	/**
+	 * @return if the entity has a single integral id column, so its rows can be read by id ranges
+	 */
+	public boolean isRangeScannable() {
+		final List<PropertyDetails> idColumns = getPureIdColumnDetails();
+		return idColumns.size()==1 && !idColumns.get(0).isNested()
+				&& INTEGRAL_ID_TYPES.contains(idColumns.get(0).getBoxedColumnTypeName());
+	}
+	/**
+	 * @return if the id is held by a single property (a single id column or an embedded id)
+	 */
+	public boolean isSingleIdProperty() {
+		return properties.values().stream().filter(prop->prop.isId() && !prop.isNested()).count()==1;
+	}
 	public PropertyDetails getIdDetails() {
 		return properties.values().stream().filter(PropertyDetails::isId).findFirst().orElse(null);
 	}
+	/**
+	 * @return the maximum number of rows in the second level cache, 0 if the entity is not cached
+	 */
+	public int getCacheSize() {
+		return cacheSize;
+	}
+	/**
+	 * @return if the rows are kept in a second level cache, only supported for an id held by a single property
+	 */
+	public boolean isCached() {
+		return cacheSize>0 && isSingleIdProperty() && !isReferenceData();
+	}
+	/**
+	 * @return if the whole table is kept in memory as reference data, only supported for an id held by a single property
+	 */
+	public boolean isReferenceData() {
+		return referenceDataRefreshSeconds!=null && isSingleIdProperty();
+	}
+	public long getReferenceDataRefreshSeconds() {
+		return referenceDataRefreshSeconds==null?0:referenceDataRefreshSeconds;
+	}
+	/**
+	 * @return if a safe getter subclass is generated for the entity
+	 */
+	public boolean isProxyable() {
+		return entity && extendable && !getProxiedProperties().isEmpty();
+	}
+	/**
+	 * @return the properties with a getter and setter of a non primitive type, whose getter may not be called
+	 * on the safe getter subclass before the setter
+	 */
+	public List<PropertyDetails> getProxiedProperties() {
+		return properties.values().stream()
+				.filter(prop->!prop.isNested() && prop.getType()!=null && !prop.getType().getKind().isPrimitive()
+						&& prop.getGetterName()!=null && prop.getSetterName()!=null)
+				.collect(Collectors.toList());
+	}
+	/**
+	 * @return if a lazy reference subclass is generated for the entity, only supported for a single (not embedded) id column
+	 */
+	public boolean isLazyLoadable() {
+		return entity && extendable && isSingleIdProperty() && getPureIdColumnDetails().size()==1 && !getIdDetails().isEmbedded();
+	}
+	/**
+	 * @return the properties with a getter and setter, other than the id, loaded by the lazy reference subclass
+	 */
+	public List<PropertyDetails> getLazyLoadedProperties() {
+		return properties.values().stream()
+				.filter(prop->!prop.isId() && !prop.isNested() && prop.getType()!=null
+						&& prop.getGetterName()!=null && prop.getSetterName()!=null)
+				.collect(Collectors.toList());
+	}
+	/**
+	 * @return the many to one references mapped to lazy references
+	 */
+	public List<PropertyDetails> getLazyReferences() {
+		return getColumnProperties().stream().filter(PropertyDetails::isLazy).collect(Collectors.toList());
+	}
+	/**
+	 * @return if a subclass tracking the changed detail columns is generated, only supported from 1 up to 64 detail columns
+	 */
+	public boolean isDirtyTracked() {
+		final List<PropertyDetails> detailColumns = getDetailColumnDetails();
+		return entity && extendable && !detailColumns.isEmpty() && detailColumns.size()<=64
+				&& detailColumns.stream().allMatch(prop->!prop.isNested() && prop.getGetterName()!=null && prop.getSetterName()!=null);
+	}
+	/**
+	 * @return the id columns, comma separated
+	 */
+	public String getIdColumns() {
+		return getPureIdColumnDetails().stream().map(PropertyDetails::getColumnName).collect(Collectors.joining(", "));
+	}
+	/**
+	 * @return the detail columns, comma separated
+	 */
+	public String getDetailColumns() {
+		return getDetailColumnDetails().stream().map(PropertyDetails::getColumnName).collect(Collectors.joining(", "));
+	}
+	/**
+	 * @return the condition matching the id columns with parameters
+	 */
+	public String getIdColumnsQuery() {
+		return getPureIdColumnDetails().stream().map(prop->prop.getColumnName() + " = ?").collect(Collectors.joining(" AND "));
+	}
+	/**
+	 * @return the assignments of the detail columns with parameters, for an update statement
+	 */
+	public String getDetailAssignments() {
+		return getDetailColumnDetails().stream().map(prop->prop.getColumnName() + " = ?").collect(Collectors.joining(", "));
+	}
+	/**
+	 * @return a parameter per id column, comma separated
+	 */
+	public String getIdParams() {
+		return String.join(", ", Collections.nCopies(getPureIdColumnDetails().size(), "?"));
+	}
+	/**
+	 * @return a parameter per detail column, comma separated
+	 */
+	public String getDetailParams() {
+		return String.join(", ", Collections.nCopies(getDetailColumnDetails().size(), "?"));
+	}
+	/**
+	 * @param tableAlias the alias of the table in the query
+	 * @param columnPrefix the prefix of the column labels
+	 * @return the id and detail columns qualified with the table alias and labeled with the prefix
+	 */
+	public String getAliasedColumns(String tableAlias, String columnPrefix) {
+		return Stream.concat(getPureIdColumnDetails().stream(), getDetailColumnDetails().stream())
+				.map(prop->tableAlias + "." + prop.getColumnName() + " " + columnPrefix + prop.getColumnName())
+				.collect(Collectors.joining(", "));
+	}
+	/**
+	 * @param tableAlias the alias of the table in the query
+	 * @return the condition matching the id columns, qualified with the table alias, with parameters
+	 */
+	public String getAliasedIdColumnsQuery(String tableAlias) {
+		return getPureIdColumnDetails().stream().map(prop->tableAlias + "." + prop.getColumnName() + " = ?")
+				.collect(Collectors.joining(" AND "));
+	}
+	/**
+	 * @return the upsert statement of the table for each supported dialect
+	 */
+	public Map<String, String> getUpsertSql() {
+		final List<String> idColumns = getPureIdColumnDetails().stream().map(PropertyDetails::getColumnName).collect(Collectors.toList());
+		final List<String> detailColumns = getDetailColumnDetails().stream().map(PropertyDetails::getColumnName).collect(Collectors.toList());
+		final Map<String, String> upsertSql = new LinkedHashMap<>();
+		for (Dialect dialect : Dialect.values()) {
+			upsertSql.put(dialect.name(), dialect.upsertSql(tableName, idColumns, detailColumns));
+		}
+		return upsertSql;
+	}
+	/**
+	 * @return if the entity is annotated as sharded
+	 */
+	public boolean isShardedAnnotated() {
+		return shardedAnnotated;
+	}
+	/**
+	 * @return if a sharded dao is generated: an entity annotated as sharded, with a single id property
+	 * assigned by the application (ids generated by the database are not unique over the shards), not reference data
+	 */
+	public boolean isSharded() {
+		return shardedAnnotated && entity && isSingleIdProperty() && isAssignedId() && !isReferenceData();
+	}
 	public String getTableName() {
 		return tableName;
 	}
+	/**
+	 * @return the qualified name of the dao extending the generated template, null if none was found
+	 */
+	public String getDaoName() {
+		return daoName;
+	}
+	public void setDaoName(String daoName) {
+		this.daoName = daoName;
+	}
+	/**
+	 * @return the name of the dao bean, the decapitalized simple name of the dao as component scanning names it
+	 */
+	public String getDaoBeanName() {
+		return daoName==null ? null : Introspector.decapitalize(daoName.substring(daoName.lastIndexOf('.')+1));
+	}
 	public boolean isEmbeddable() {
 		return embeddable;
 	}
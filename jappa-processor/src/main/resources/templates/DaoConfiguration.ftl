@@ -0,0 +1,19 @@
+package ${options.destinationPackage};
+// Generated by org.fylia.jappa.JappaProcessor
+
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Generated Spring configuration registering the daos of the templates of ${options.destinationPackage}, without classpath scanning
+ */
+@Configuration
+public class JappaDaoConfiguration {
+<#list types as type><#if type.daoName??>
+
+    @Bean
+    public ${type.daoName} ${type.daoBeanName}() {
+        return new ${type.daoName}();
+    }
+</#if></#list>
+}
@@ -6,99 +6,300 @@
     ${objectParam}.${propertyDetails.getterName}()
 </#if>
 </#compress></#macro>
+<#macro bindParameter propertyDetails objectParam index>
+<#assign valueName = propertyDetails.name?replace('.','_') + "Value">
+<#if propertyDetails.primitiveColumn && propertyDetails.binding??>
+        prepareStatement.set${propertyDetails.binding.accessor}(${index}, ${objectParam}.${propertyDetails.getterName}());
+<#else>
+<#if propertyDetails.nested><#assign parentProperty = type.properties[propertyDetails.parentProperty]>
+        final ${propertyDetails.boxedColumnTypeName} ${valueName} = ${objectParam}.${parentProperty.getterName}()==null?null:${objectParam}.${parentProperty.getterName}().${propertyDetails.getterName}();
+<#else>
+        final ${propertyDetails.boxedColumnTypeName} ${valueName} = <@appendGetterCall objectParam=objectParam propertyDetails=propertyDetails />;
+</#if>
+<@bindValue propertyDetails=propertyDetails valueName=valueName index=index />
+</#if>
+</#macro>
+<#macro bindValue propertyDetails valueName index>
+<#if !propertyDetails.binding??>
+        prepareStatement.setObject(${index}, ${valueName});
+<#else>
+        if (${valueName} == null) {
+            prepareStatement.setNull(${index}, Types.${propertyDetails.binding.sqlType});
+        } else {
+            prepareStatement.set${propertyDetails.binding.accessor}(${index}, ${propertyDetails.binding.toJdbc(valueName)});
+        }
+</#if>
+</#macro>
+<#macro idParameters><#compress>
+<#assign first = true><#list type.allIdDetails as pd><#if !pd.nested><#if !first>, <#else><#assign first = false></#if>${pd.type} ${pd.name}</#if></#list>
+</#compress></#macro>
+<#macro idArguments><#compress>
+<#assign first = true><#list type.allIdDetails as pd><#if !pd.nested><#if !first>, <#else><#assign first = false></#if>${pd.name}</#if></#list>
+</#compress></#macro>
+<#macro lazyLoaderParameters t><#list t.lazyReferences as pd>, Function<Collection<${pd.referenceType.idDetails.boxedColumnTypeName}>, Map<${pd.referenceType.idDetails.boxedColumnTypeName}, ${pd.referenceType.name}>> ${pd.name}Loader</#list></#macro>
+<#macro lazyLoaders t><#list t.lazyReferences as pd>, <#if pd.referenceType.name == type.name>this::findByIds<#else>ids -> getRelatedDao(${pd.referenceType.simpleName}JdbcTemplate.class, ${pd.referenceType.simpleName}JdbcTemplate::new).findByIds(ids)</#if></#list></#macro>
+<#macro readColumn propertyDetails target index resultSet="rs" indent="            ">
+<#assign valueName = propertyDetails.name?replace('.','_') + "Value">
+<#if !propertyDetails.binding??>
+${indent}${target}.${propertyDetails.setterName}((${propertyDetails.type})${resultSet}.getObject(${index}));
+<#else><#assign binding = propertyDetails.binding>
+<#if propertyDetails.type.kind.primitive>
+${indent}${target}.${propertyDetails.setterName}(${resultSet}.get${binding.accessor}(${index}));
+<#elseif binding.primitive>
+${indent}final ${binding.jdbcValueType} ${valueName} = ${resultSet}.get${binding.accessor}(${index});
+${indent}${target}.${propertyDetails.setterName}(${resultSet}.wasNull() ? null : ${binding.fromJdbc(valueName)});
+<#elseif binding.converted>
+${indent}final ${binding.jdbcValueType} ${valueName} = ${resultSet}.get${binding.accessor}(${index});
+${indent}${target}.${propertyDetails.setterName}(${valueName} == null ? null : ${binding.fromJdbc(valueName)});
+<#else>
+${indent}${target}.${propertyDetails.setterName}(${resultSet}.get${binding.accessor}(${index}));
+</#if>
+</#if>
+</#macro>
 
 package ${options.destinationPackage};
 // Generated by org.fylia.jappa.JappaProcessor
 
+import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.Types;
 import java.util.Arrays;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.EnumSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+import java.util.function.Function;
 import java.util.stream.Collectors;
 import java.util.stream.IntStream;
+import java.util.stream.Stream;
 import ${type.name};
 import org.fylia.jappa.core.AbstractSpringJdbcDao;
+import org.fylia.jappa.core.ColumnIndexResolver;
+import org.fylia.jappa.core.IdentityMap;
 import org.fylia.jappa.core.PropertyDetail;
+import org.fylia.jappa.core.cache.CacheStatistics;
+import org.fylia.jappa.core.cache.EntityCache;
+import org.fylia.jappa.core.cache.ReferenceDataSnapshot;
+import org.fylia.jappa.core.cache.ReferenceDataTable;
+<#if type.assignedId>
+import org.fylia.jappa.core.dialect.Dialect;
+</#if>
+<#if type.allocatedId>
+import org.fylia.jappa.core.id.PooledIdAllocator;
+</#if>
+<#if type.dirtyTracked>
+import org.fylia.jappa.core.proxy.DirtyTracking;
+</#if>
+<#if type.lazyLoadable>
+import org.fylia.jappa.core.proxy.LazyLoadBatch;
+import org.fylia.jappa.core.proxy.LazyLoadBatches;
+import org.fylia.jappa.core.proxy.LazyReference;
+</#if>
+<#if type.sharded>
+import org.fylia.jappa.core.shard.ShardedDao;
+</#if>
+<#if type.proxyable>
+import org.fylia.jappa.core.proxy.SafeGetterProxyFactory;
+import org.fylia.jappa.core.proxy.SafeGetterProxyFactory.NotSetPropertyException;
+</#if>
 import org.springframework.dao.EmptyResultDataAccessException;
 import org.springframework.jdbc.core.RowMapper;
-import org.springframework.jdbc.support.GeneratedKeyHolder;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
 
 /**
  * Generated Class with utilities for use with JdbcTemplate and ${type.packageName}.${type.name}
  */
 public class ${type.simpleName}JdbcTemplate extends AbstractSpringJdbcDao { 
-    public static final String TABLENAME = "${type.tableName}";
-    public static final List<PropertyDetail> PROPERTIES_LIST = Arrays.asList(
-<#list type.properties?values as pd>
-            new PropertyDetail("${pd.name}","${pd.columnName}", ${pd.type}.class, ${pd.id?c}, 
-                <#if pd.generationType??>javax.persistence.GenerationType.${pd.generationType}<#else>null</#if>, 
-                <#if pd.generator??>"${pd.generator}"<#else>null</#if>, 
-                ${pd.embedded?c}, ${pd.nested?c}, ${pd.unique?c}, ${pd.nullable?c}, ${pd.insertable?c}, ${pd.updatable?c}, "${pd.columnDefinition}", "${pd.table}", ${pd.length?c}, ${pd.precision?c}, ${pd.scale?c}, "${pd.referencedColumnName}", null, 
-                <#if pd.propertyType??>PropertyDetail.PropertyType.${pd.propertyType}<#else>null</#if>)<#sep>,
-</#list>);
-            
+<#assign hasDetailColumns = type.detailColumnDetails?has_content>
+    public static final String TABLENAME = "${type.tableName?j_string}";
+    public static final List<String> DETAIL_COLUMN_LIST = Arrays.asList(<#list type.detailColumnDetails as pd>"${pd.columnName?j_string}"<#sep>, </#list>);
+    public static final List<String> ID_COLUMN_LIST = Arrays.asList(<#list type.pureIdColumnDetails as pd>"${pd.columnName?j_string}"<#sep>, </#list>);
+    public static final int DETAIL_COLUMN_COUNT = ${type.detailColumnDetails?size?c};
+    public static final int ID_COLUMN_COUNT = ${type.pureIdColumnDetails?size?c};
+    public static final String DETAIL_COLUMNS = "${type.detailColumns?j_string}";
+    public static final String ID_COLUMNS = "${type.idColumns?j_string}";
+    public static final String ALL_COLUMNS = ID_COLUMNS<#if hasDetailColumns> + ", " + DETAIL_COLUMNS</#if>;
+    public static final String ID_COLUMNS_QUERY = "${type.idColumnsQuery?j_string}";
 
-    public static final List<PropertyDetail> DETAIL_PROPERTIES_LIST = PROPERTIES_LIST.stream().filter(p->!p.isId()).collect(Collectors.toList());
-    public static final List<PropertyDetail> ID_PROPERTIES_LIST = PROPERTIES_LIST.stream().filter(p->p.isId() && (!p.isEmbedded() || p.isNested())).collect(Collectors.toList());
-    public static final List<String> DETAIL_COLUMN_LIST = DETAIL_PROPERTIES_LIST.stream().map(PropertyDetail::getColumnName).collect(Collectors.toList());
-    public static final List<String> ID_COLUMN_LIST = ID_PROPERTIES_LIST.stream().map(PropertyDetail::getColumnName).collect(Collectors.toList());
-    public static final String DETAIL_COLUMNS = DETAIL_COLUMN_LIST.stream().collect(Collectors.joining(", "));
-    public static final String ID_COLUMNS = ID_COLUMN_LIST.stream().collect(Collectors.joining(", "));
-    public static final String ALL_COLUMNS = ID_COLUMNS + ", " + DETAIL_COLUMNS;
-    public static final String ID_COLUMNS_QUERY = ID_COLUMN_LIST.stream().map(col-> col + " = ? ").collect(Collectors.joining(" AND "));
+    public static final String DETAIL_PARAMS = "${type.detailParams}";
+    public static final String ID_PARAMS = "${type.idParams}";
 
-    public static final String DETAIL_PARAMS = IntStream.range(0, DETAIL_PROPERTIES_LIST.size()).mapToObj(i->"?").collect(Collectors.joining(", "));
-    public static final String ID_PARAMS = IntStream.range(0, ID_PROPERTIES_LIST.size()).mapToObj(i->"?").collect(Collectors.joining(", "));
+    private static final String INSERT_GENERATED_ID_SQL = "insert into "+TABLENAME+" (" + ALL_COLUMNS + ") values (default<#if hasDetailColumns>, " + DETAIL_PARAMS + "</#if>)";
+    private static final String INSERT_SQL = "insert into "+TABLENAME+" (" + ALL_COLUMNS + ") values (" + ID_PARAMS + "<#if hasDetailColumns>, " + DETAIL_PARAMS + "</#if>)";
+    private static final String SELECT_SQL = "select " + ALL_COLUMNS + " from " + TABLENAME;
+    private static final String SELECT_BY_ID_SQL = SELECT_SQL + " where " + ID_COLUMNS_QUERY;
+    private static final String FIRST_PAGE_SQL = SELECT_SQL + " order by " + ID_COLUMNS + " limit ?";
+    private static final String NEXT_PAGE_SQL = SELECT_SQL + " where (" + ID_COLUMNS + ") > (" + ID_PARAMS + ") order by " + ID_COLUMNS + " limit ?";
+<#if type.rangeScannable>
+    private static final String ID_RANGE_SQL = "select min(" + ID_COLUMNS + "), max(" + ID_COLUMNS + ") from " + TABLENAME;
+    private static final String RANGE_SQL = SELECT_SQL + " where " + ID_COLUMNS + " between ? and ? order by " + ID_COLUMNS;
+</#if>
+<#if hasDetailColumns>
+    private static final String UPDATE_SQL = "UPDATE " + TABLENAME + " SET ${type.detailAssignments?j_string} WHERE " + ID_COLUMNS_QUERY;
+</#if>
+<#if type.singleIdProperty>
+    private static final String[] FIND_BY_IDS_SQL = inListQueries(SELECT_SQL, ID_COLUMNS, ID_COLUMN_COUNT);
+</#if>
+<#if type.assignedId>
+<#list type.upsertSql as dialect, sql>
+    private static final String ${dialect}_UPSERT_SQL = "${sql?j_string}";
+</#list>
+</#if>
+<#if type.dirtyTracked>
+    private static final long ALL_DETAIL_COLUMNS = -1L >>> ${(64 - type.detailColumnDetails?size)?c};
+    private static final Map<Long, String> UPDATE_SQL_BY_DIRTY_COLUMNS = new ConcurrentHashMap<>();
+</#if>
+<#assign projectionBits = type.detailPropertyDetails?size <= 64>
+<#if projectionBits>
+    private static final Map<Long, String> PROJECTION_SQL_BY_PROPERTIES = new ConcurrentHashMap<>();
+    private static final Map<Long, String> PROJECTION_BY_ID_SQL_BY_PROPERTIES = new ConcurrentHashMap<>();
+</#if>
 
+<#list type.columnProperties as pd><#if pd.propertyType.name() == "MANY_TO_ONE" && pd.referenceType.singleIdProperty><#assign referenceType = pd.referenceType>
+    public static final String FETCH_${pd.name?upper_case}_SQL = "select ${type.getAliasedColumns("this", "this_")?j_string}, ${referenceType.getAliasedColumns(pd.name, pd.name + "_")?j_string}"
+            + " from " + TABLENAME + " this left outer join " + ${referenceType.simpleName}JdbcTemplate.TABLENAME + " ${pd.name} on this.${pd.columnName} = ${pd.name}.${referenceType.pureIdColumnDetails[0].columnName}";
+    private static final String FETCH_${pd.name?upper_case}_BY_ID_SQL = FETCH_${pd.name?upper_case}_SQL + " where ${type.getAliasedIdColumnsQuery("this")?j_string}";
+</#if></#list>
+<#list type.columnProperties as pd><#if pd.propertyType.name() == "MANY_TO_ONE" && pd.referenceType.singleIdProperty && pd.referenceType.pureIdColumnDetails?size == 1>
+    private static final String[] FIND_BY_${pd.name?upper_case}_IDS_SQL = inListQueries(SELECT_SQL, "${pd.columnName}", 1);
+</#if></#list>
+<#list type.columnProperties as pd><#if pd.ordinalEnum>
+    private static final ${pd.type}[] ${pd.enumValuesConstant} = ${pd.type}.values();
+</#if></#list>
+
+<#if type.referenceData>
+    private static final ReferenceDataTable<${type.idDetails.boxedColumnTypeName}, ${type.simpleName}> REFERENCE_DATA = new ReferenceDataTable<>(${type.referenceDataRefreshSeconds?c});
+</#if>
+<#if type.cached>
+    private static final int CACHE_SIZE = ${type.cacheSize?c};
+</#if>
+    private static final String[] REFERENCE_PROPERTIES = {<#list type.columnProperties as pd><#if pd.propertyType.name() == "MANY_TO_ONE" && pd.referenceType.singleIdProperty>"${pd.name}", </#if></#list>};
+
+<#assign lazyReferences = type.lazyReferences>
+<#-- the mappers of the generated methods: the dao's own instances when lazy references are mapped, loaded by this dao -->
+<#assign rowMapper = lazyReferences?has_content?then("mapper", "MAPPER")>
+<#function fetchMapper pd><#return (lazyReferences?has_content || pd.referenceType.lazyReferences?has_content)?then("fetch${pd.name?cap_first}Mapper", "FETCH_${pd.name?upper_case}_MAPPER")></#function>
+<#if lazyReferences?has_content>
+    /**
+     * Maps the rows without a dao: the many to one references hold only their id, they are not lazy references.
+     */
+</#if>
     public static final ${type.simpleName}RowMapper MAPPER = new ${type.simpleName}RowMapper();
-<#list type.properties?values as pd><#if pd.propertyType.name() == "MANY_TO_ONE">
+<#if type.proxyable>
+
+    static {
+        SafeGetterProxyFactory.register(${type.simpleName}.class, ${type.simpleName}SafeGetterProxy::new);
+    }
+</#if>
+<#list type.columnProperties as pd><#if pd.propertyType.name() == "MANY_TO_ONE" && pd.referenceType.singleIdProperty>
+    public static final RowMapper<${type.simpleName}> FETCH_${pd.name?upper_case}_MAPPER = joinMapper(new ${type.simpleName}RowMapper("this_"),
+            new ${pd.referenceType.simpleName}JdbcTemplate.${pd.referenceType.simpleName}RowMapper("${pd.name}_"), ${type.simpleName}::${pd.getterName}, ${type.simpleName}::${pd.setterName});
+</#if></#list>
+<#list type.columnProperties as pd><#if pd.propertyType.name() == "MANY_TO_ONE">
     public static final ${pd.referenceType.simpleName}JdbcTemplate.${pd.referenceType.simpleName}IdRowMapper ${pd.referenceType.simpleName?upper_case}_ID_MAPPER = new ${pd.referenceType.simpleName}JdbcTemplate.${pd.referenceType.simpleName}IdRowMapper("${pd.columnName}");
 </#if></#list>
+<#if lazyReferences?has_content>
+
+    private final ${type.simpleName}RowMapper mapper = new ${type.simpleName}RowMapper(""<@lazyLoaders type />);
+<#if projectionBits>
+    private final Map<Long, ${type.simpleName}ProjectionRowMapper> projectionMappers = new ConcurrentHashMap<>();
+</#if>
+<#elseif projectionBits>
+
+    private static final Map<Long, ${type.simpleName}ProjectionRowMapper> PROJECTION_MAPPERS = new ConcurrentHashMap<>();
+</#if>
+<#list type.columnProperties as pd><#if pd.propertyType.name() == "MANY_TO_ONE" && pd.referenceType.singleIdProperty && fetchMapper(pd) != "FETCH_${pd.name?upper_case}_MAPPER">
+    private final RowMapper<${type.simpleName}> ${fetchMapper(pd)} = joinMapper(new ${type.simpleName}RowMapper("this_"<@lazyLoaders type />),
+            new ${pd.referenceType.simpleName}JdbcTemplate.${pd.referenceType.simpleName}RowMapper("${pd.name}_"<@lazyLoaders pd.referenceType />), ${type.simpleName}::${pd.getterName}, ${type.simpleName}::${pd.setterName});
+</#if></#list>
 
     public ${type.simpleName} insert(${type.simpleName} ${type.simpleName?lower_case}) {
-        if (ID_PROPERTIES_LIST.size()==1 && ID_PROPERTIES_LIST.get(0).getGenerationType()!=null) {
-            final GeneratedKeyHolder holder = new GeneratedKeyHolder();
-            getJdbcTemplate().update(new SimplePreparedStatementCreator(
-                    "insert into "+TABLENAME+"(" + ALL_COLUMNS + ") values (default, " + DETAIL_PARAMS+ ")",
-                prepareStatement -> {
-                    for (int col = 0; col<DETAIL_PROPERTIES_LIST.size(); col++) {
-                        prepareStatement.setObject(col+1, getColumnValue(${type.simpleName?lower_case}, DETAIL_PROPERTIES_LIST.get(col).getName()));
-                    }
-                }), holder);
-            List<Object> idValues = new ArrayList<>(holder.getKeys().values());
-            setColumnValue(${type.simpleName?lower_case}, ID_PROPERTIES_LIST.get(0).getName(), idValues.get(0));
-        } else {
-            getJdbcTemplate().update("insert into "+TABLENAME+" (" + ALL_COLUMNS + ") values (" + ID_PARAMS + ", " + DETAIL_PARAMS + ")",
-                prepareStatement -> {
-                    for (int col = 0; col<ID_PROPERTIES_LIST.size(); col++) {
-                        prepareStatement.setObject(DETAIL_PROPERTIES_LIST.size()+col+1, getColumnValue(${type.simpleName?lower_case}, ID_PROPERTIES_LIST.get(col).getName()));
-                    }
-                    for (int col = 0; col<DETAIL_PROPERTIES_LIST.size(); col++) {
-                        prepareStatement.setObject(col+1, getColumnValue(${type.simpleName?lower_case}, DETAIL_PROPERTIES_LIST.get(col).getName()));
-                    }
-                }
-            );
+<#if type.generatedId>
+        insertWithGeneratedKey(INSERT_GENERATED_ID_SQL, ${type.simpleName?lower_case},
+            (prepareStatement, item) -> setDetailParameters(prepareStatement, 1, item),
+            ${type.simpleName}JdbcTemplate::setGeneratedId);
+<#else>
+<#if type.allocatedId>
+        if (!hasId(${type.simpleName?lower_case})) {
+            setAllocatedId(${type.simpleName?lower_case}, getIdAllocator().nextId());
         }
-        return ${type.simpleName?lower_case};
+</#if>
+        getJdbcTemplate().update(INSERT_SQL,
+            prepareStatement -> {
+                setIdParameters(prepareStatement, 1, ${type.simpleName?lower_case});
+                setDetailParameters(prepareStatement, ID_COLUMN_COUNT+1, ${type.simpleName?lower_case});
+            }
+        );
+</#if>
+        return stored(${type.simpleName?lower_case});
     }
 
 
+<#if type.dirtyTracked>
+    /**
+     * Update the columns changed since the row was loaded or stored, all columns for an instance that is not
+     * tracked (not created by the mappers). No statement is executed when nothing changed.
+     */
     public ${type.simpleName} update(${type.simpleName} ${type.simpleName?lower_case}) {
-        getJdbcTemplate().update("UPDATE "+TABLENAME+" SET (" + DETAIL_COLUMNS + ") = (" + DETAIL_PARAMS + ") WHERE ("+ID_COLUMNS_QUERY+")",
+        final long dirtyColumns = dirtyColumns(${type.simpleName?lower_case});
+        if (dirtyColumns != 0) {
+            getJdbcTemplate().update(updateSql(dirtyColumns),
+                prepareStatement -> setIdParameters(prepareStatement,
+                    setDirtyDetailParameters(prepareStatement, 1, ${type.simpleName?lower_case}, dirtyColumns), ${type.simpleName?lower_case}));
+        }
+        return stored(${type.simpleName?lower_case});
+    }
+<#elseif !hasDetailColumns>
+    /**
+     * Nothing to update: all the columns are written with the id.
+     */
+    public ${type.simpleName} update(${type.simpleName} ${type.simpleName?lower_case}) {
+        return stored(${type.simpleName?lower_case});
+    }
+<#else>
+    public ${type.simpleName} update(${type.simpleName} ${type.simpleName?lower_case}) {
+        getJdbcTemplate().update(UPDATE_SQL,
             prepareStatement -> {
-                for (int col = 0; col<DETAIL_PROPERTIES_LIST.size(); col++) {
-                    prepareStatement.setObject(col+1, getColumnValue(${type.simpleName?lower_case}, DETAIL_PROPERTIES_LIST.get(col).getName()));
-                }
-                for (int col = 0; col<ID_PROPERTIES_LIST.size(); col++) {
-                    prepareStatement.setObject(DETAIL_PROPERTIES_LIST.size()+col+1, getColumnValue(${type.simpleName?lower_case}, ID_PROPERTIES_LIST.get(col).getName()));
-                }
+                setDetailParameters(prepareStatement, 1, ${type.simpleName?lower_case});
+                setIdParameters(prepareStatement, DETAIL_COLUMN_COUNT+1, ${type.simpleName?lower_case});
             }
         );
-        return ${type.simpleName?lower_case};
+        return stored(${type.simpleName?lower_case});
     }
+</#if>
 
 
+<#if type.assignedId>
+    /**
+     * Insert the row, or update it when a row with the same id exists, with a single upsert statement
+     * (insert or update when the dialect of the database is not supported).
+     */
+    public ${type.simpleName} merge(${type.simpleName} ${type.simpleName?lower_case}) {
+        final Dialect dialect = getDialect();
+        if (!hasId(${type.simpleName?lower_case})) {
+            return insert(${type.simpleName?lower_case});
+        } else if (dialect == null) {
+            return update(${type.simpleName?lower_case});
+        }
+        getJdbcTemplate().update(upsertSql(dialect),
+            prepareStatement -> {
+                setIdParameters(prepareStatement, 1, ${type.simpleName?lower_case});
+                setDetailParameters(prepareStatement, ID_COLUMN_COUNT+1, ${type.simpleName?lower_case});
+            }
+        );
+        return stored(${type.simpleName?lower_case});
+    }
+<#else>
     public ${type.simpleName} merge(${type.simpleName} ${type.simpleName?lower_case}) {
         if (!hasId(${type.simpleName?lower_case})) {
             return insert(${type.simpleName?lower_case});
@@ -106,31 +307,641 @@ public class ${type.simpleName}JdbcTemplate extends AbstractSpringJdbcDao {
             return update(${type.simpleName?lower_case});
         }
     }
+</#if>
+
+
+    public Collection<${type.simpleName}> insertAll(Collection<${type.simpleName}> ${type.simpleName?lower_case}s) {
+<#if type.generatedId>
+        batchInsert(INSERT_GENERATED_ID_SQL, new ArrayList<>(${type.simpleName?lower_case}s),
+            (prepareStatement, ${type.simpleName?lower_case}) -> setDetailParameters(prepareStatement, 1, ${type.simpleName?lower_case}),
+            ${type.simpleName}JdbcTemplate::setGeneratedId);
+<#else>
+<#if type.allocatedId>
+        final List<${type.simpleName}> withoutId = ${type.simpleName?lower_case}s.stream().filter(item -> !hasId(item)).collect(Collectors.toList());
+        final long[] ids = getIdAllocator().nextIds(withoutId.size());
+        for (int i = 0; i < ids.length; i++) {
+            setAllocatedId(withoutId.get(i), ids[i]);
+        }
+</#if>
+        batchUpdate(INSERT_SQL, ${type.simpleName?lower_case}s,
+            (prepareStatement, ${type.simpleName?lower_case}) -> {
+                setIdParameters(prepareStatement, 1, ${type.simpleName?lower_case});
+                setDetailParameters(prepareStatement, ID_COLUMN_COUNT+1, ${type.simpleName?lower_case});
+            }
+        );
+</#if>
+        return storedAll(${type.simpleName?lower_case}s);
+    }
+
+
+<#if type.dirtyTracked>
+    /**
+     * Update the columns changed since the rows were loaded or stored, with a batch per set of changed columns.
+     * The rows without changes are skipped.
+     */
+    public Collection<${type.simpleName}> updateAll(Collection<${type.simpleName}> ${type.simpleName?lower_case}s) {
+        final Map<Long, List<${type.simpleName}>> byDirtyColumns = new LinkedHashMap<>();
+        for (${type.simpleName} ${type.simpleName?lower_case} : ${type.simpleName?lower_case}s) {
+            final long dirtyColumns = dirtyColumns(${type.simpleName?lower_case});
+            if (dirtyColumns != 0) {
+                byDirtyColumns.computeIfAbsent(dirtyColumns, d -> new ArrayList<>()).add(${type.simpleName?lower_case});
+            }
+        }
+        byDirtyColumns.forEach((dirtyColumns, rows) -> batchUpdate(updateSql(dirtyColumns), rows,
+            (prepareStatement, ${type.simpleName?lower_case}) -> setIdParameters(prepareStatement,
+                setDirtyDetailParameters(prepareStatement, 1, ${type.simpleName?lower_case}, dirtyColumns), ${type.simpleName?lower_case})));
+        return storedAll(${type.simpleName?lower_case}s);
+    }
+<#elseif !hasDetailColumns>
+    /**
+     * Nothing to update: all the columns are written with the id.
+     */
+    public Collection<${type.simpleName}> updateAll(Collection<${type.simpleName}> ${type.simpleName?lower_case}s) {
+        return storedAll(${type.simpleName?lower_case}s);
+    }
+<#else>
+    public Collection<${type.simpleName}> updateAll(Collection<${type.simpleName}> ${type.simpleName?lower_case}s) {
+        batchUpdate(UPDATE_SQL, ${type.simpleName?lower_case}s,
+            (prepareStatement, ${type.simpleName?lower_case}) -> {
+                setDetailParameters(prepareStatement, 1, ${type.simpleName?lower_case});
+                setIdParameters(prepareStatement, DETAIL_COLUMN_COUNT+1, ${type.simpleName?lower_case});
+            }
+        );
+        return storedAll(${type.simpleName?lower_case}s);
+    }
+</#if>
 
 
-    public ${type.simpleName} getById(<#list type.allIdDetails as pd><#if !pd.nested><#if first??>, <#else><#assign first = false></#if>${pd.type} ${pd.name}</#if></#list>) {
+    public Collection<${type.simpleName}> mergeAll(Collection<${type.simpleName}> ${type.simpleName?lower_case}s) {
+        final List<${type.simpleName}> toInsert = new ArrayList<>();
+        final List<${type.simpleName}> toUpdate = new ArrayList<>();
+        for (${type.simpleName} ${type.simpleName?lower_case} : ${type.simpleName?lower_case}s) {
+            if (!hasId(${type.simpleName?lower_case})) {
+                toInsert.add(${type.simpleName?lower_case});
+            } else {
+                toUpdate.add(${type.simpleName?lower_case});
+            }
+        }
+        insertAll(toInsert);
+<#if type.assignedId>
+        final Dialect dialect = getDialect();
+        if (dialect == null) {
+            updateAll(toUpdate);
+        } else {
+            batchUpdate(upsertSql(dialect), toUpdate,
+                (prepareStatement, ${type.simpleName?lower_case}) -> {
+                    setIdParameters(prepareStatement, 1, ${type.simpleName?lower_case});
+                    setDetailParameters(prepareStatement, ID_COLUMN_COUNT+1, ${type.simpleName?lower_case});
+                }
+            );
+            storedAll(toUpdate);
+        }
+<#else>
+        updateAll(toUpdate);
+</#if>
+        return ${type.simpleName?lower_case}s;
+    }
+
+
+    @Transactional(propagation = Propagation.SUPPORTS, readOnly = true)
+    public ${type.simpleName} getById(<@idParameters />) {
+<#if type.referenceData>
+        return getReferenceData().get(<@idArguments />);
+<#else>
+<#if type.singleIdProperty>
+        final IdentityMap identityMap = getIdentityMap();
+        if (identityMap != null) {
+            final ${type.simpleName} loaded = identityMap.get(${type.simpleName}.class, <@idArguments />);
+            if (loaded != null) {
+                return loaded;
+            }
+        }
+</#if>
+<#if type.cached>
+        final EntityCache<${type.idDetails.boxedColumnTypeName}, ${type.simpleName}> cache = getCache();
+        final ${type.simpleName} cached = cache.get(<@idArguments />);
+        if (cached != null) {
+            return IdentityMap.canonical(${type.simpleName}.class, <@idArguments />, copyOf(cached));
+        }
+</#if>
+        final ${type.simpleName} ${type.simpleName?lower_case};
         try {
-            return getJdbcTemplate().queryForObject(
-                "select " + ALL_COLUMNS + " from " + TABLENAME + " where " + ID_COLUMNS_QUERY, new Object[] {<#assign first = true><#list type.allIdDetails as pd><#if pd.nested || !pd.embedded><#if !first>, <#else><#assign first = false></#if><#if pd.nested>${pd.parentProperty}.${pd.getterName}()<#else>${pd.name}</#if></#if></#list>},
-                MAPPER);
+            ${type.simpleName?lower_case} = getReadJdbcTemplate().queryForObject(
+                SELECT_BY_ID_SQL, new Object[] {<#assign first = true><#list type.allIdDetails as pd><#if pd.nested || !pd.embedded><#if !first>, <#else><#assign first = false></#if><#if pd.nested>${pd.parentProperty}.${pd.getterName}()<#else>${pd.name}</#if></#if></#list>},
+                ${rowMapper});
         } catch (EmptyResultDataAccessException e) {
             return null;
         }
+<#if type.cached>
+        cacheLoaded(cache, <@idArguments />, copyOf(${type.simpleName?lower_case}));
+</#if>
+        return ${type.simpleName?lower_case};
+</#if>
+    }
+
+<#if type.singleIdProperty>
+    /**
+     * Get the rows for a collection of ids, with one query per chunk of ids instead of one per id.
+     * @return the rows found, by id, in the order of the given ids
+     */
+    @Transactional(propagation = Propagation.SUPPORTS, readOnly = true)
+    public Map<${type.idDetails.boxedColumnTypeName}, ${type.simpleName}> findByIds(Collection<${type.idDetails.boxedColumnTypeName}> ids) {
+<#if type.referenceData>
+        return getReferenceData().get(ids);
+<#elseif type.cached>
+        return readThrough(ids, getCache(),
+            missing -> queryByIds(missing, FIND_BY_IDS_SQL, ID_COLUMN_COUNT,
+                ${type.simpleName}JdbcTemplate::setIdValueParameters, ${rowMapper}, ${type.simpleName}::${type.idDetails.getterName}),
+            cached -> IdentityMap.canonical(${type.simpleName}.class, cached.${type.idDetails.getterName}(), copyOf(cached)),
+            ${type.simpleName}JdbcTemplate::copyOf);
+<#else>
+        return queryByIds(ids, FIND_BY_IDS_SQL, ID_COLUMN_COUNT,
+            ${type.simpleName}JdbcTemplate::setIdValueParameters, ${rowMapper}, ${type.simpleName}::${type.idDetails.getterName});
+</#if>
+    }
+
+</#if>
+    /**
+     * Load the many to one references of the given rows, with one query per reference instead of one per row,
+     * and set the loaded instances on the rows.
+     * @param ${type.simpleName?lower_case}s the rows
+     * @param properties the names of the references to load, all of them when none are given
+     */
+    @Transactional(propagation = Propagation.SUPPORTS, readOnly = true)
+    public List<${type.simpleName}> fetchReferences(List<${type.simpleName}> ${type.simpleName?lower_case}s, String... properties) {
+        for (String property : properties.length == 0 ? REFERENCE_PROPERTIES : properties) {
+            switch (property) {
+<#list type.columnProperties as pd><#if pd.propertyType.name() == "MANY_TO_ONE" && pd.referenceType.singleIdProperty><#assign referenceType = pd.referenceType>
+                case "${pd.name}":
+                    fetchReference(${type.simpleName?lower_case}s, item -> <@appendGetterCall objectParam="item" propertyDetails=pd />,
+                        getRelatedDao(${referenceType.simpleName}JdbcTemplate.class, ${referenceType.simpleName}JdbcTemplate::new)::findByIds,
+                        ${type.simpleName}::${pd.setterName});
+                    break;
+</#if></#list>
+                default:
+                    throw new IllegalArgumentException("Property "+property+" is not a many to one reference.");
+            }
+        }
+        return ${type.simpleName?lower_case}s;
+    }
+
+<#list type.columnProperties as pd><#if pd.propertyType.name() == "MANY_TO_ONE" && pd.referenceType.singleIdProperty && pd.referenceType.pureIdColumnDetails?size == 1>
+    /**
+     * Get the rows referring to a collection of ${pd.name} ids, with one query per chunk of ids instead of one per id.
+     * @return the rows, grouped by ${pd.name} id, in the order of the given ids
+     */
+    @Transactional(propagation = Propagation.SUPPORTS, readOnly = true)
+    public Map<${pd.boxedColumnTypeName}, List<${type.simpleName}>> findBy${pd.name?cap_first}Ids(Collection<${pd.boxedColumnTypeName}> ${pd.name}Ids) {
+        return queryGroupedByIds(${pd.name}Ids, FIND_BY_${pd.name?upper_case}_IDS_SQL, 1,
+            ${type.simpleName}JdbcTemplate::set${pd.name?cap_first}IdParameter, ${rowMapper}, item -> <@appendGetterCall objectParam="item" propertyDetails=pd />);
+    }
+
+</#if></#list>
+<#if type.singleIdProperty && type.pureIdColumnDetails?size == 1>
+<#list type.oneToManyProperties as pd><#assign childType = pd.referenceType><#assign foreignKey = childType.properties[pd.mappedBy]>
+    /**
+     * Load the ${pd.name} of the given rows, with one query per chunk of rows instead of one per row,
+     * and set them on the rows.
+     * @param ${type.simpleName?lower_case}s the rows
+     */
+    @Transactional(propagation = Propagation.SUPPORTS, readOnly = true)
+    public List<${type.simpleName}> fetch${pd.name?cap_first}(List<${type.simpleName}> ${type.simpleName?lower_case}s) {
+        fetchCollection(${type.simpleName?lower_case}s, ${type.simpleName}::${type.idDetails.getterName},
+            getRelatedDao(${childType.simpleName}JdbcTemplate.class, ${childType.simpleName}JdbcTemplate::new)::findBy${foreignKey.name?cap_first}Ids,
+            ${type.simpleName}::${pd.setterName});
+        return ${type.simpleName?lower_case}s;
     }
 
+    /**
+     * Get all rows with their ${pd.name}, using two queries instead of one per row.
+     */
+    @Transactional(propagation = Propagation.SUPPORTS, readOnly = true)
+    public List<${type.simpleName}> findAllFetch${pd.name?cap_first}() {
+        return fetch${pd.name?cap_first}(findAll());
+    }
+
+</#list>
+</#if>
+    @Transactional(propagation = Propagation.SUPPORTS, readOnly = true)
     public List<${type.simpleName}> findAll() {
-        return getJdbcTemplate().query(
-                "select " + ALL_COLUMNS + " from " + TABLENAME, new Object[] {},
-                MAPPER);
+<#if type.referenceData>
+        return new ArrayList<>(getReferenceData().getAll());
+<#else>
+        return getReadJdbcTemplate().query(
+                SELECT_SQL, new Object[] {},
+                ${rowMapper});
+</#if>
+    }
+
+<#list type.columnProperties as pd><#if pd.propertyType.name() == "MANY_TO_ONE" && pd.referenceType.singleIdProperty>
+    /**
+     * Get all rows with their ${pd.name}, read in the same query through a left outer join.
+     */
+    @Transactional(propagation = Propagation.SUPPORTS, readOnly = true)
+    public List<${type.simpleName}> findAllFetch${pd.name?cap_first}() {
+        return getReadJdbcTemplate().query(FETCH_${pd.name?upper_case}_SQL, ${fetchMapper(pd)});
+    }
+
+    /**
+     * Get a row with its ${pd.name}, read in the same query through a left outer join.
+     */
+    @Transactional(propagation = Propagation.SUPPORTS, readOnly = true)
+    public ${type.simpleName} getByIdFetch${pd.name?cap_first}(<@idParameters />) {
+        final List<${type.simpleName}> rows = getReadJdbcTemplate().query(FETCH_${pd.name?upper_case}_BY_ID_SQL,
+            prepareStatement -> setIdValueParameters(prepareStatement, 1, <@idArguments />),
+            ${fetchMapper(pd)});
+        return rows.isEmpty() ? null : rows.get(0);
+    }
+
+</#if></#list>
+    /**
+     * Get all rows with only the id and the given properties loaded<#if type.proxyable>, in safe getter proxies
+     * throwing a NotSetPropertyException when reading a property that was not loaded</#if>.
+     * The rows are not registered in the identity map nor in the cache.
+     * @param properties the properties to select
+     */
+    @Transactional(propagation = Propagation.SUPPORTS, readOnly = true)
+    public List<${type.simpleName}> findAll(Set<Property> properties) {
+        return getReadJdbcTemplate().query(projectionSql(properties), projectionMapper(properties));
+    }
+
+    /**
+     * Get a row with only the id and the given properties loaded<#if type.proxyable>, in a safe getter proxy
+     * throwing a NotSetPropertyException when reading a property that was not loaded</#if>.
+     * The row is not registered in the identity map nor in the cache.
+     * @param properties the properties to select
+     */
+    @Transactional(propagation = Propagation.SUPPORTS, readOnly = true)
+    public ${type.simpleName} getById(<@idParameters />, Set<Property> properties) {
+        final List<${type.simpleName}> rows = getReadJdbcTemplate().query(projectionByIdSql(properties),
+            prepareStatement -> setIdValueParameters(prepareStatement, 1, <@idArguments />),
+            projectionMapper(properties));
+        return rows.isEmpty() ? null : rows.get(0);
+    }
+
+    private static String projectionSql(Set<Property> properties) {
+<#if projectionBits>
+        return PROJECTION_SQL_BY_PROPERTIES.computeIfAbsent(propertyBits(properties), bits -> "select " + ID_COLUMNS
+                + Arrays.stream(Property.values()).filter(property -> (bits & 1L << property.ordinal()) != 0)
+                    .map(property -> ", " + property.getColumnName()).collect(Collectors.joining())
+                + " from " + TABLENAME);
+    }
+
+    /**
+     * @return the selected properties, a bit per property by ordinal
+     */
+    private static long propertyBits(Set<Property> properties) {
+        long bits = 0;
+        for (Property property : properties) {
+            bits |= 1L << property.ordinal();
+        }
+        return bits;
+<#else>
+        return "select " + ID_COLUMNS + properties.stream().map(property -> ", " + property.getColumnName()).collect(Collectors.joining())
+                + " from " + TABLENAME;
+</#if>
     }
 
+    /**
+     * @return the mapper of the projection queries selecting the properties<#if projectionBits>, shared by all these queries</#if>
+     */
+    private <#if !lazyReferences?has_content>static </#if>${type.simpleName}ProjectionRowMapper projectionMapper(Set<Property> properties) {
+<#if projectionBits>
+        return ${lazyReferences?has_content?then("projectionMappers", "PROJECTION_MAPPERS")}.computeIfAbsent(propertyBits(properties),
+            bits -> new ${type.simpleName}ProjectionRowMapper(<#if lazyReferences?has_content>"", </#if>properties<@lazyLoaders type />));
+<#else>
+        return new ${type.simpleName}ProjectionRowMapper(<#if lazyReferences?has_content>"", </#if>properties<@lazyLoaders type />);
+</#if>
+    }
+
+    private static String projectionByIdSql(Set<Property> properties) {
+<#if projectionBits>
+        return PROJECTION_BY_ID_SQL_BY_PROPERTIES.computeIfAbsent(propertyBits(properties),
+            bits -> projectionSql(properties) + " where " + ID_COLUMNS_QUERY);
+<#else>
+        return projectionSql(properties) + " where " + ID_COLUMNS_QUERY;
+</#if>
+    }
+
+    /**
+     * Stream all rows, reading them from a forward only cursor while the stream is consumed.
+     * The stream must be closed (try-with-resources) when not read until the end.
+     * It does not start a transaction, which would end before the rows are read: it takes part in a running one,
+     * or reads on a connection of its own, released when the stream is closed.
+     */
+    @Transactional(propagation = Propagation.SUPPORTS)
+    public Stream<${type.simpleName}> streamAll() {
+        return queryForStream(SELECT_SQL, ${rowMapper});
+    }
+<#if type.rangeScannable>
+
+    /**
+     * Stream all rows in parallel, ordered by id: the id range is split in partitions, each read by its own query and
+     * connection, at most {@link #getScanConcurrency()} at once, on threads of their own.
+     * It cannot take part in a running transaction. The stream should be closed, like the other streams.
+     * @param partitions the number of partitions to split the id range in
+     * @return the parallel stream of all rows
+     */
+    @Transactional(propagation = Propagation.SUPPORTS)
+    public Stream<${type.simpleName}> parallelStreamAll(int partitions) {
+        return queryIdRanges(ID_RANGE_SQL, RANGE_SQL, <#if lazyReferences?has_content>() -> new ${type.simpleName}RowMapper(""<@lazyLoaders type />)<#else>${type.simpleName}RowMapper::new</#if>, partitions);
+    }
+
+    /**
+     * Process all rows in parallel, e.g. for an export, see {@link #parallelStreamAll(int)}
+     * @param partitions the number of partitions to split the id range in
+     * @param action called for each row, from several threads
+     */
+    public void parallelScan(int partitions, Consumer<? super ${type.simpleName}> action) {
+        try (Stream<${type.simpleName}> rows = parallelStreamAll(partitions)) {
+            rows.forEach(action);
+        }
+    }
+</#if>
+
+    /**
+     * Get the first page of rows, ordered by id.
+     * @param limit the maximum number of rows in the page
+     */
+    @Transactional(propagation = Propagation.SUPPORTS, readOnly = true)
+    public List<${type.simpleName}> findFirstPage(int limit) {
+        return getReadJdbcTemplate().query(FIRST_PAGE_SQL,
+            prepareStatement -> prepareStatement.setInt(1, limit),
+            ${rowMapper});
+    }
+
+    /**
+     * Get the page of rows following the given id, ordered by id.
+     * Seeks on the id columns instead of skipping an offset, so every page costs the same.
+     * @param limit the maximum number of rows in the page
+     */
+    @Transactional(propagation = Propagation.SUPPORTS, readOnly = true)
+    public List<${type.simpleName}> findPageAfter(<@idParameters />, int limit) {
+        return getReadJdbcTemplate().query(NEXT_PAGE_SQL,
+            prepareStatement -> {
+                setIdValueParameters(prepareStatement, 1, <@idArguments />);
+                prepareStatement.setInt(ID_COLUMN_COUNT+1, limit);
+            },
+            ${rowMapper});
+    }
+
+    private static void setIdParameters(PreparedStatement prepareStatement, int offset, ${type.simpleName} ${type.simpleName?lower_case}) throws SQLException {
+<#list type.pureIdColumnDetails as pd>
+<@bindParameter propertyDetails=pd objectParam=type.simpleName?lower_case index="offset"+(pd?index==0)?then("", "+"+pd?index) />
+</#list>
+    }
+
+    private static void setDetailParameters(PreparedStatement prepareStatement, int offset, ${type.simpleName} ${type.simpleName?lower_case}) throws SQLException {
+<#list type.detailColumnDetails as pd>
+<@bindParameter propertyDetails=pd objectParam=type.simpleName?lower_case index="offset"+(pd?index==0)?then("", "+"+pd?index) />
+</#list>
+    }
+
+<#if type.dirtyTracked>
+    /**
+     * Bind the changed detail columns
+     * @return the index of the next parameter
+     */
+    private static int setDirtyDetailParameters(PreparedStatement prepareStatement, int offset, ${type.simpleName} ${type.simpleName?lower_case}, long dirtyColumns) throws SQLException {
+        int index = offset;
+<#list type.detailColumnDetails as pd>
+        if ((dirtyColumns & 1L << ${pd?index?c}) != 0) {
+<#assign bound><@bindParameter propertyDetails=pd objectParam=type.simpleName?lower_case index="index" /></#assign>
+<#list bound?split("\n") as line><#if line?has_content>
+    ${line}
+</#if></#list>
+            index++;
+        }
+</#list>
+        return index;
+    }
+
+    private static String updateSql(long dirtyColumns) {
+        if (dirtyColumns == ALL_DETAIL_COLUMNS) {
+            return UPDATE_SQL;
+        }
+        return UPDATE_SQL_BY_DIRTY_COLUMNS.computeIfAbsent(dirtyColumns, dirty -> "UPDATE " + TABLENAME + " SET "
+                + IntStream.range(0, DETAIL_COLUMN_LIST.size()).filter(i -> (dirty & 1L << i) != 0)
+                    .mapToObj(i -> DETAIL_COLUMN_LIST.get(i) + " = ?").collect(Collectors.joining(", "))
+                + " WHERE " + ID_COLUMNS_QUERY);
+    }
+
+    /**
+     * @return the columns changed since the row was loaded or stored, all columns if the row is not tracked
+     */
+    private static long dirtyColumns(${type.simpleName} ${type.simpleName?lower_case}) {
+        return ${type.simpleName?lower_case} instanceof DirtyTracking ? ((DirtyTracking) ${type.simpleName?lower_case}).getDirtyColumns() : ALL_DETAIL_COLUMNS;
+    }
+
+    /**
+     * Forget the changes of a tracked row, once loaded or stored
+     */
+    private static ${type.simpleName} clean(${type.simpleName} ${type.simpleName?lower_case}) {
+        if (${type.simpleName?lower_case} instanceof DirtyTracking) {
+            ((DirtyTracking) ${type.simpleName?lower_case}).clearDirtyColumns();
+        }
+        return ${type.simpleName?lower_case};
+    }
+
+</#if>
+<#if type.assignedId>
+    private static String upsertSql(Dialect dialect) {
+        switch (dialect) {
+<#list type.upsertSql as dialect, sql>
+        case ${dialect}:
+            return ${dialect}_UPSERT_SQL;
+</#list>
+        default:
+            throw new IllegalArgumentException("Unsupported dialect " + dialect);
+        }
+    }
+
+</#if>
+    private static void setIdValueParameters(PreparedStatement prepareStatement, int offset, <@idParameters />) throws SQLException {
+<#list type.pureIdColumnDetails as pd>
+<#assign index = "offset"+(pd?index==0)?then("", "+"+pd?index)>
+<#assign valueExpression = pd.nested?then(pd.parentProperty+"."+pd.getterName+"()", pd.name)>
+<#if pd.type.kind.primitive && pd.binding??>
+        prepareStatement.set${pd.binding.accessor}(${index}, ${valueExpression});
+<#else>
+<#assign valueName = pd.name?replace('.','_') + "Value">
+        final ${pd.boxedColumnTypeName} ${valueName} = ${valueExpression};
+<@bindValue propertyDetails=pd valueName=valueName index=index />
+</#if>
+</#list>
+    }
+
+<#list type.columnProperties as pd><#if pd.propertyType.name() == "MANY_TO_ONE" && pd.referenceType.singleIdProperty && pd.referenceType.pureIdColumnDetails?size == 1>
+    private static void set${pd.name?cap_first}IdParameter(PreparedStatement prepareStatement, int offset, ${pd.boxedColumnTypeName} ${pd.name}Id) throws SQLException {
+<@bindValue propertyDetails=pd valueName=pd.name+"Id" index="offset" />
+    }
+
+</#if></#list>
+<#if type.allocatedId><#assign idDetails = type.pureIdColumnDetails[0]>
+    private PooledIdAllocator getIdAllocator() {
+<#if idDetails.generationType.name() == "SEQUENCE"><#assign sequenceName = idDetails.sequenceName?has_content?then(idDetails.sequenceName, type.tableName + "_seq")>
+        return getIdAllocator("${sequenceName}", dataSource -> PooledIdAllocator.sequence(dataSource, nextSequenceValueSql("${sequenceName}"), ${idDetails.allocationSize?c}));
+<#else><#assign generatorTable = idDetails.generatorTable?has_content?then(idDetails.generatorTable, "id_sequences")>
+<#assign pkColumnValue = idDetails.generatorPkColumnValue?has_content?then(idDetails.generatorPkColumnValue, type.tableName)>
+        return getIdAllocator("${generatorTable}.${pkColumnValue}", dataSource -> PooledIdAllocator.table(dataSource, "${generatorTable}",
+            "${idDetails.generatorPkColumnName?has_content?then(idDetails.generatorPkColumnName, "sequence_name")}", "${idDetails.generatorValueColumnName?has_content?then(idDetails.generatorValueColumnName, "next_val")}",
+            "${pkColumnValue}", ${idDetails.generatorInitialValue?c}L, ${idDetails.allocationSize?c}));
+</#if>
+    }
+
+    private static void setAllocatedId(${type.simpleName} ${type.simpleName?lower_case}, long id) {
+        ${type.simpleName?lower_case}.${idDetails.setterName}(<#if idDetails.boxedColumnTypeName == "java.lang.Integer">(int) id<#elseif idDetails.boxedColumnTypeName == "java.lang.Short">(short) id<#else>id</#if>);
+    }
+
+</#if>
+<#if type.generatedId>
+    private static void setGeneratedId(${type.simpleName} ${type.simpleName?lower_case}, ResultSet keys) throws SQLException {
+<@readColumn propertyDetails=type.pureIdColumnDetails[0] target=type.simpleName?lower_case index="1" resultSet="keys" indent="        " />
+    }
+
+</#if>
+    /**
+     * <#if type.dirtyTracked>Forget the changes of a stored row and keep<#else>Keep</#if> the identity map of the running transaction<#if type.cached> and the second level cache</#if><#if type.referenceData> and the reference data</#if> in line with a stored row
+     */
+    private ${type.simpleName} stored(${type.simpleName} ${type.simpleName?lower_case}) {
+<#if type.dirtyTracked>
+        clean(${type.simpleName?lower_case});
+</#if>
+<#if type.singleIdProperty>
+        final IdentityMap identityMap = getIdentityMap();
+        if (identityMap != null && hasId(${type.simpleName?lower_case})) {
+            identityMap.put(${type.simpleName}.class, ${type.simpleName?lower_case}.${type.idDetails.getterName}(), ${type.simpleName?lower_case});
+        }
+</#if>
+<#if type.referenceData>
+        REFERENCE_DATA.invalidate();
+</#if>
+<#if type.cached>
+        invalidate(getCache(), Collections.singletonList(${type.simpleName?lower_case}.${type.idDetails.getterName}()));
+</#if>
+        return ${type.simpleName?lower_case};
+    }
+
+    private Collection<${type.simpleName}> storedAll(Collection<${type.simpleName}> ${type.simpleName?lower_case}s) {
+<#if type.dirtyTracked>
+        ${type.simpleName?lower_case}s.forEach(${type.simpleName}JdbcTemplate::clean);
+</#if>
+<#if type.singleIdProperty>
+        final IdentityMap identityMap = getIdentityMap();
+        if (identityMap != null) {
+            for (${type.simpleName} ${type.simpleName?lower_case} : ${type.simpleName?lower_case}s) {
+                if (hasId(${type.simpleName?lower_case})) {
+                    identityMap.put(${type.simpleName}.class, ${type.simpleName?lower_case}.${type.idDetails.getterName}(), ${type.simpleName?lower_case});
+                }
+            }
+        }
+</#if>
+<#if type.referenceData>
+        if (!${type.simpleName?lower_case}s.isEmpty()) {
+            REFERENCE_DATA.invalidate();
+        }
+</#if>
+<#if type.cached>
+        invalidate(getCache(), ${type.simpleName?lower_case}s.stream().map(${type.simpleName}::${type.idDetails.getterName}).collect(Collectors.toList()));
+</#if>
+        return ${type.simpleName?lower_case}s;
+    }
+
+<#if type.referenceData>
+    /**
+     * Get the snapshot of the whole table, loading it when it is not loaded yet or expired
+     */
+    protected ReferenceDataSnapshot<${type.idDetails.boxedColumnTypeName}, ${type.simpleName}> getReferenceData() {
+        return REFERENCE_DATA.get(this::loadReferenceData);
+    }
+
+    /**
+     * Load the whole table again and swap the snapshot
+     */
+    @Transactional(propagation = Propagation.SUPPORTS, readOnly = true)
+    public void refreshReferenceData() {
+        REFERENCE_DATA.refresh(this::loadReferenceData);
+    }
+
+    private ReferenceDataSnapshot<${type.idDetails.boxedColumnTypeName}, ${type.simpleName}> loadReferenceData() {
+        return new ReferenceDataSnapshot<>(getReadJdbcTemplate().query(SELECT_SQL, ${rowMapper}),
+            ${type.simpleName}::${type.idDetails.getterName});
+    }
+
+    /**
+     * @return the row from the loaded reference data, null if not loaded or not found
+     */
+    private static ${type.simpleName} fromReferenceData(${type.idDetails.boxedColumnTypeName} id) {
+        final ReferenceDataSnapshot<${type.idDetails.boxedColumnTypeName}, ${type.simpleName}> referenceData = REFERENCE_DATA.current();
+        return referenceData == null ? null : referenceData.get(id);
+    }
+
+</#if>
+<#if type.cached>
+    private EntityCache<${type.idDetails.boxedColumnTypeName}, ${type.simpleName}> getCache() {
+        return getEntityCache(${type.simpleName}.class, CACHE_SIZE);
+    }
+
+    /**
+     * @return the hit, miss and eviction counters of the second level cache
+     */
+    public CacheStatistics getCacheStatistics() {
+        return getCache().getStatistics();
+    }
+
+    /**
+     * Copy the column values of a row, so the instances in the second level cache are never handed out.
+     * The many to one references are copied as references only holding their id.
+     */
+    private static ${type.simpleName} copyOf(${type.simpleName} ${type.simpleName?lower_case}) {
+        final ${type.simpleName} copy = new ${type.simpleName}<#if type.dirtyTracked>Tracked</#if>();
+<#list type.columnProperties as pd>
+<#if pd.embedded && !pd.nested>
+        if (${type.simpleName?lower_case}.${pd.getterName}() != null) {
+            copy.${pd.setterName}(new ${pd.type}());
+        }
+<#elseif pd.nested><#assign parentProperty = type.properties[pd.parentProperty]>
+        if (${type.simpleName?lower_case}.${parentProperty.getterName}() != null) {
+            copy.${parentProperty.getterName}().${pd.setterName}(${type.simpleName?lower_case}.${parentProperty.getterName}().${pd.getterName}());
+        }
+<#elseif pd.propertyType.name() == "MANY_TO_ONE" && pd.referenceType.singleIdProperty && pd.referenceType.pureIdColumnDetails?size == 1>
+        copy.${pd.setterName}(${type.simpleName?lower_case}.${pd.getterName}() == null ? null : ${pd.referenceType.simpleName}JdbcTemplate.reference(${type.simpleName?lower_case}.${pd.getterName}().${pd.referenceType.idDetails.getterName}()));
+<#else>
+        copy.${pd.setterName}(${type.simpleName?lower_case}.${pd.getterName}());
+</#if>
+</#list>
+<#if type.dirtyTracked>
+        return clean(copy);
+<#else>
+        return copy;
+</#if>
+    }
+
+</#if>
+<#if type.singleIdProperty && type.pureIdColumnDetails?size == 1 && !type.idDetails.embedded>
+    /**
+     * Get a reference only holding an id, or the instance loaded in the running transaction if there is one
+     */
+    public static ${type.simpleName} reference(${type.idDetails.boxedColumnTypeName} id) {
+<#if type.referenceData>
+        final ${type.simpleName} loaded = fromReferenceData(id);
+        if (loaded != null) {
+            return loaded;
+        }
+</#if>
+        final ${type.simpleName} ${type.simpleName?lower_case} = new ${type.simpleName}();
+        ${type.simpleName?lower_case}.${type.idDetails.setterName}(id);
+        return IdentityMap.reference(${type.simpleName}.class, id, ${type.simpleName?lower_case});
+    }
+
+</#if>
     public static boolean hasId(${type.simpleName} ${type.simpleName?lower_case}) {
-        return ID_PROPERTIES_LIST.stream().anyMatch(p->getColumnValue(${type.simpleName?lower_case}, p.getName())!=null);
+        return <#list type.pureIdColumnDetails as pd><#if pd.nested><#assign parentProperty = type.properties[pd.parentProperty]>(${type.simpleName?lower_case}.${parentProperty.getterName}()!=null && ${type.simpleName?lower_case}.${parentProperty.getterName}().${pd.getterName}()!=null)<#elseif pd.type.kind.primitive>${type.simpleName?lower_case}.${pd.getterName}()!=0<#else>${type.simpleName?lower_case}.${pd.getterName}()!=null</#if><#sep> || </#list>;
     }
 
     public static Object getColumnValue(${type.simpleName} ${type.simpleName?lower_case}, String prop) {
         switch(prop) {
-<#list type.properties?values as pd>
+<#list type.columnProperties as pd>
             case "${pd.name}": {
 <#if pd.nested><#assign parentProperty = type.properties[pd.parentProperty]>
                 ${parentProperty.type} parent = (${parentProperty.type})getColumnValue(${type.simpleName?lower_case}, "${parentProperty.name}");
@@ -147,7 +958,7 @@ public class ${type.simpleName}JdbcTemplate extends AbstractSpringJdbcDao {
 
     public static void setColumnValue(${type.simpleName} ${type.simpleName?lower_case}, String prop, Object value) {
         switch(prop) {
-<#list type.properties?values as pd>
+<#list type.columnProperties as pd>
             case "${pd.name}": {
 <#if pd.nested><#assign parentProperty = type.properties[pd.parentProperty]>
                 ${parentProperty.type} parent = (${parentProperty.type})getColumnValue(${type.simpleName?lower_case}, "${parentProperty.name}");
@@ -174,35 +985,133 @@ public class ${type.simpleName}JdbcTemplate extends AbstractSpringJdbcDao {
         }
     }
 
+    /**
+     * @return the metadata of the mapped columns, built on first access
+     */
+    public static List<PropertyDetail> getPropertiesList() {
+        return ${type.simpleName}Properties.PROPERTIES_LIST;
+    }
+
+    /**
+     * @return the metadata of the detail (non id) columns
+     */
+    public static List<PropertyDetail> getDetailPropertiesList() {
+        return ${type.simpleName}Properties.DETAIL_PROPERTIES_LIST;
+    }
+
+    /**
+     * @return the metadata of the id columns
+     */
+    public static List<PropertyDetail> getIdPropertiesList() {
+        return ${type.simpleName}Properties.ID_PROPERTIES_LIST;
+    }
+
+    /**
+     * Holder of the column metadata, only initialized when the metadata is used, not when the template class is loaded
+     */
+    private static final class ${type.simpleName}Properties {
+<#assign detailIndexes = []><#assign idIndexes = []>
+<#list type.columnProperties as pd><#if !pd.id><#assign detailIndexes += [pd?index]><#elseif !pd.embedded || pd.nested><#assign idIndexes += [pd?index]></#if></#list>
+        static final List<PropertyDetail> PROPERTIES_LIST = Arrays.asList(
+<#list type.columnProperties as pd>
+                new PropertyDetail("${pd.name}","${pd.columnName}", ${pd.type}.class, ${pd.id?c}, 
+                    <#if pd.generationType??>javax.persistence.GenerationType.${pd.generationType}<#else>null</#if>, 
+                    <#if pd.generator??>"${pd.generator}"<#else>null</#if>, 
+                    ${pd.embedded?c}, ${pd.nested?c}, ${pd.unique?c}, ${pd.nullable?c}, ${pd.insertable?c}, ${pd.updatable?c}, "${pd.columnDefinition}", "${pd.table}", ${pd.length?c}, ${pd.precision?c}, ${pd.scale?c}, "${pd.referencedColumnName}", null, 
+                    <#if pd.propertyType??>PropertyDetail.PropertyType.${pd.propertyType}<#else>null</#if>)<#sep>,
+</#list>);
+        static final List<PropertyDetail> DETAIL_PROPERTIES_LIST = Arrays.asList(<#list detailIndexes as index>PROPERTIES_LIST.get(${index?c})<#sep>, </#list>);
+        static final List<PropertyDetail> ID_PROPERTIES_LIST = Arrays.asList(<#list idIndexes as index>PROPERTIES_LIST.get(${index?c})<#sep>, </#list>);
+
+        private ${type.simpleName}Properties() {
+        }
+    }
+
+    /**
+     * The properties that can be selected by the projection queries, the id is always selected
+     */
+    public enum Property {
+<#list type.detailPropertyDetails as pd>
+        ${pd.name?replace('.','_')?upper_case}("${pd.columnName}")<#sep>,</#sep>
+</#list>;
+
+        private final String columnName;
+
+        Property(String columnName) {
+            this.columnName = columnName;
+        }
+
+        public String getColumnName() {
+            return columnName;
+        }
+    }
+
     public static final class ${type.simpleName}IdRowMapper implements RowMapper<${type.simpleName}> {
-<#list type.pureIdColumnDetails as pd>
-        private final String ${pd.name?replace('.','_')}ColName;
-</#list>
+        private final ColumnIndexResolver columns;
+<#if type.lazyLoadable>
+        private final LazyLoadBatches<${type.idDetails.boxedColumnTypeName}, ${type.simpleName}> lazyBatches;
+</#if>
+
         public ${type.simpleName}IdRowMapper() {
             this(<#list type.pureIdColumnDetails as pd>"${pd.columnName}"<#sep>, </#list>);
         }
 
         public ${type.simpleName}IdRowMapper(<#list type.pureIdColumnDetails as pd>String ${pd.name?replace('.','_')}ColName<#sep>, </#list>) {
-<#list type.pureIdColumnDetails as pd>
-            this.${pd.name?replace('.','_')}ColName = ${pd.name?replace('.','_')}ColName;
-</#list>
+<#if type.lazyLoadable>
+            this(<#list type.pureIdColumnDetails as pd>${pd.name?replace('.','_')}ColName</#list>, null);
+        }
+
+        /**
+         * Constructor
+         * @param lazyLoader loads the rows by ids, when given the references are lazy references,
+         * loaded together with the references mapped from the same ResultSet
+         */
+        public ${type.simpleName}IdRowMapper(<#list type.pureIdColumnDetails as pd>String ${pd.name?replace('.','_')}ColName</#list>,
+                Function<Collection<${type.idDetails.boxedColumnTypeName}>, Map<${type.idDetails.boxedColumnTypeName}, ${type.simpleName}>> lazyLoader) {
+            columns = new ColumnIndexResolver(<#list type.pureIdColumnDetails as pd>${pd.name?replace('.','_')}ColName</#list>);
+            lazyBatches = lazyLoader == null ? null : new LazyLoadBatches<>(lazyLoader);
+<#else>
+            columns = new ColumnIndexResolver(<#list type.pureIdColumnDetails as pd>${pd.name?replace('.','_')}ColName<#sep>, </#list>);
+</#if>
         }
 
         @Override
         public ${type.simpleName} mapRow(ResultSet rs, int rowNum) throws SQLException {
+            final int[] columnIndexes = columns.getColumnIndexes(rs);
+<#if type.lazyLoadable>
+            final ${type.simpleName} o = lazyBatches == null ? new ${type.simpleName}() : new ${type.simpleName}LazyReference();
+<#else>
             final ${type.simpleName} o = new ${type.simpleName}();
+</#if>
+<#assign colIndex = 0>
 <#list type.allIdDetails as pd>
 <#if pd.embedded && !pd.nested>
             ${pd.type} ${pd.name} = new ${pd.type}();
             o.${pd.setterName}(${pd.name});
-<#elseif pd.embedded && pd.nested>
-            ${pd.parentProperty}.${pd.setterName}(<#if pd.jdbcType == 'Object'>(${pd.type})</#if>rs.get${pd.jdbcType}(${pd.name?replace('.','_')}ColName));
 <#else>
-            o.${pd.setterName}(<#if pd.jdbcType == 'Object'>(${pd.type})</#if>rs.get${pd.jdbcType}(${pd.name?replace('.','_')}ColName));
+<@readColumn propertyDetails=pd target=pd.nested?then(pd.parentProperty, "o") index="columnIndexes[${colIndex}]" />
+<#assign colIndex = colIndex + 1>
 </#if>
 </#list>
             if (hasId(o)) {
+<#if type.referenceData>
+                final ${type.simpleName} loaded = fromReferenceData(o.${type.idDetails.getterName}());
+                if (loaded != null) {
+                    return loaded;
+                }
+</#if>
+<#if type.lazyLoadable>
+                final ${type.simpleName} reference = IdentityMap.reference(${type.simpleName}.class, o.${type.idDetails.getterName}(), o);
+                if (reference == o && lazyBatches != null) {
+                    final ${type.simpleName}LazyReference lazyReference = (${type.simpleName}LazyReference) o;
+                    lazyReference.batch = lazyBatches.add(rs, o.${type.idDetails.getterName}(), lazyReference);
+                }
+                return reference;
+<#elseif type.singleIdProperty>
+                return IdentityMap.reference(${type.simpleName}.class, o.${type.idDetails.getterName}(), o);
+<#else>
                 return o;
+</#if>
             } else {
                 return null;
             }
@@ -211,8 +1120,9 @@ public class ${type.simpleName}JdbcTemplate extends AbstractSpringJdbcDao {
 
     public static final class ${type.simpleName}RowMapper implements RowMapper<${type.simpleName}> {
         private final String columnPrefix;
-<#list type.properties?values as pd><#if !pd.embedded || pd.nested>
-        private final String ${pd.name?replace('.','_')}ColName;
+        private final ColumnIndexResolver columns;
+<#list type.columnProperties as pd><#if pd.propertyType.name() == "MANY_TO_ONE">
+        private final ${pd.referenceType.simpleName}JdbcTemplate.${pd.referenceType.simpleName}IdRowMapper ${pd.name}IdMapper;
 </#if></#list>
 
         public ${type.simpleName}RowMapper() {
@@ -220,27 +1130,323 @@ public class ${type.simpleName}JdbcTemplate extends AbstractSpringJdbcDao {
         }
 
         public ${type.simpleName}RowMapper(String columnPrefix) {
+<#if lazyReferences?has_content>
+            this(columnPrefix<#list lazyReferences as pd>, null</#list>);
+        }
+
+        /**
+         * Constructor
+         * @param columnPrefix the prefix of the column labels
+<#list lazyReferences as pd>
+         * @param ${pd.name}Loader loads the ${pd.name} references by ids, null to map them as references holding only their id
+</#list>
+         */
+        public ${type.simpleName}RowMapper(String columnPrefix<@lazyLoaderParameters type />) {
+</#if>
             this.columnPrefix = columnPrefix;
-<#list type.properties?values as pd><#if !pd.embedded || pd.nested>
-            ${pd.name?replace('.','_')}ColName = columnPrefix + "${pd.columnName}";
+            columns = new ColumnIndexResolver(
+<#list type.mappedColumnDetails as pd>
+                    columnPrefix + "${pd.columnName}"<#sep>,</#sep>
+</#list>
+            );
+<#list type.columnProperties as pd><#if pd.propertyType.name() == "MANY_TO_ONE">
+            ${pd.name}IdMapper = new ${pd.referenceType.simpleName}JdbcTemplate.${pd.referenceType.simpleName}IdRowMapper(columnPrefix + "${pd.columnName}"<#if pd.lazy>, ${pd.name}Loader</#if>);
 </#if></#list>
         }
 
         @Override
         public ${type.simpleName} mapRow(ResultSet rs, int rowNum) throws SQLException {
-             final ${type.simpleName} o = new ${type.simpleName}();
+            final int[] columnIndexes = columns.getColumnIndexes(rs);
+            final ${type.simpleName} o = new ${type.simpleName}<#if type.dirtyTracked>Tracked</#if>();
 
-<#list type.properties?values as pd><#if pd.embedded && !pd.nested>
+<#assign colIndex = 0>
+<#list type.columnProperties as pd><#if pd.embedded && !pd.nested>
             ${pd.type} ${pd.name} = new ${pd.type}();
             o.${pd.setterName}(${pd.name});
+<#elseif pd.propertyType.name() == "MANY_TO_ONE">
+            o.${pd.setterName}(${pd.name}IdMapper.mapRow(rs,rowNum));
 <#else>
-            <#if pd.embedded && pd.nested>${pd.parentProperty}<#else>o</#if>.${pd.setterName}(<#if pd.propertyType.name() == "MANY_TO_ONE">${pd.referenceType.simpleName?upper_case}_ID_MAPPER.mapRow(rs,rowNum));<#else><#if pd.jdbcType == 'Object'>(${pd.type})</#if>rs.get${pd.jdbcType}(${pd.name?replace('.','_')}ColName));</#if>
+<@readColumn propertyDetails=pd target=pd.nested?then(pd.parentProperty, "o") index="columnIndexes[${colIndex}]" />
+<#assign colIndex = colIndex + 1>
 </#if></#list>
-             return o;
+<#if type.dirtyTracked>
+            clean(o);
+</#if>
+<#if type.singleIdProperty>
+            return hasId(o) ? IdentityMap.canonical(${type.simpleName}.class, o.${type.idDetails.getterName}(), o) : o;
+<#else>
+            return o;
+</#if>
         }
 
         public String getColumnPrefix() {
             return columnPrefix;
         }
     }
+
+    /**
+     * Maps the id and the selected properties of a projection query<#if type.proxyable> to a safe getter proxy</#if>
+     */
+    public static final class ${type.simpleName}ProjectionRowMapper implements RowMapper<${type.simpleName}> {
+        private final Property[] properties;
+        private final ColumnIndexResolver columns;
+<#list type.columnProperties as pd><#if pd.propertyType.name() == "MANY_TO_ONE">
+        private final ${pd.referenceType.simpleName}JdbcTemplate.${pd.referenceType.simpleName}IdRowMapper ${pd.name}IdMapper;
+</#if></#list>
+
+        public ${type.simpleName}ProjectionRowMapper(Set<Property> properties) {
+            this("", properties);
+        }
+
+        public ${type.simpleName}ProjectionRowMapper(String columnPrefix, Set<Property> properties) {
+<#if lazyReferences?has_content>
+            this(columnPrefix, properties<#list lazyReferences as pd>, null</#list>);
+        }
+
+        /**
+         * Constructor
+         * @param columnPrefix the prefix of the column labels
+         * @param properties the selected properties
+<#list lazyReferences as pd>
+         * @param ${pd.name}Loader loads the ${pd.name} references by ids, null to map them as references holding only their id
+</#list>
+         */
+        public ${type.simpleName}ProjectionRowMapper(String columnPrefix, Set<Property> properties<@lazyLoaderParameters type />) {
+</#if>
+            this.properties = (properties.isEmpty() ? EnumSet.noneOf(Property.class) : EnumSet.copyOf(properties)).toArray(new Property[0]);
+            final List<String> columnLabels = new ArrayList<>();
+<#list type.pureIdColumnDetails as pd>
+            columnLabels.add(columnPrefix + "${pd.columnName}");
+</#list>
+            for (Property property : this.properties) {
+                columnLabels.add(columnPrefix + property.getColumnName());
+            }
+            columns = new ColumnIndexResolver(columnLabels.toArray(new String[columnLabels.size()]));
+<#list type.columnProperties as pd><#if pd.propertyType.name() == "MANY_TO_ONE">
+            ${pd.name}IdMapper = new ${pd.referenceType.simpleName}JdbcTemplate.${pd.referenceType.simpleName}IdRowMapper(columnPrefix + "${pd.columnName}"<#if pd.lazy>, ${pd.name}Loader</#if>);
+</#if></#list>
+        }
+
+        @Override
+        public ${type.simpleName} mapRow(ResultSet rs, int rowNum) throws SQLException {
+            final int[] columnIndexes = columns.getColumnIndexes(rs);
+            final ${type.simpleName} o = new ${type.simpleName}<#if type.proxyable>SafeGetterProxy</#if>();
+<#assign colIndex = 0>
+<#list type.allIdDetails as pd>
+<#if pd.embedded && !pd.nested>
+            ${pd.type} ${pd.name} = new ${pd.type}();
+            o.${pd.setterName}(${pd.name});
+<#else>
+<@readColumn propertyDetails=pd target=pd.nested?then(pd.parentProperty, "o") index="columnIndexes[${colIndex}]" />
+<#assign colIndex = colIndex + 1>
+</#if>
+</#list>
+            for (int i = 0; i < properties.length; i++) {
+                final int columnIndex = columnIndexes[${colIndex}+i];
+                switch (properties[i]) {
+<#list type.detailPropertyDetails as pd>
+                    case ${pd.name?replace('.','_')?upper_case}: {
+<#if pd.propertyType.name() == "MANY_TO_ONE">
+                        o.${pd.setterName}(${pd.name}IdMapper.mapRow(rs, rowNum));
+<#else>
+<@readColumn propertyDetails=pd target="o" index="columnIndex" indent="                        " />
+</#if>
+                        break;
+                    }
+</#list>
+                    default:
+                        throw new IllegalArgumentException("Property "+properties[i]+" unknown.");
+                }
+            }
+            return o;
+        }
+    }
+<#if type.proxyable>
+
+    /**
+     * ${type.simpleName} throwing a NotSetPropertyException when a getter returns null before its setter was called,
+     * unless the getter is annotated with SafeGetter. The properties set are tracked in a bit per property.
+     */
+    public static class ${type.simpleName}SafeGetterProxy extends ${type.simpleName} implements SafeGetterProxyFactory.SafeGetterProxy {
+<#assign words = ((type.proxiedProperties?size - 1) / 64)?floor>
+<#list 0..words as word>
+        private long setProperties${(word > 0)?then(word?c, "")};
+</#list>
+<#list type.proxiedProperties as pd><#assign field = "setProperties" + (pd?index >= 64)?then((pd?index / 64)?floor?c, "")><#assign bit = "1L << " + (pd?index % 64)?c>
+
+        @Override
+        public void ${pd.setterName}(${pd.type} ${pd.name}) {
+            ${field} |= ${bit};
+            super.${pd.setterName}(${pd.name});
+        }
+<#if !pd.safeGetter>
+
+        @Override
+        public ${pd.type} ${pd.getterName}() {
+            final ${pd.type} value = super.${pd.getterName}();
+            if (value == null && (${field} & ${bit}) == 0) {
+                throw new NotSetPropertyException("${pd.getterName}", ${type.simpleName}.class);
+            }
+            return value;
+        }
+</#if>
+</#list>
+    }
+</#if>
+<#if type.lazyLoadable>
+
+    /**
+     * ${type.simpleName} mapped from its id only by a lazy many to one reference. The first getter or setter call
+     * loads the other properties, together with all the references mapped from the same query result.
+     */
+    public static class ${type.simpleName}LazyReference extends ${type.simpleName} implements LazyReference<${type.simpleName}> {
+        private LazyLoadBatch<${type.idDetails.boxedColumnTypeName}, ${type.simpleName}> batch;
+        private volatile boolean loaded;
+
+        @Override
+        public void load(${type.simpleName} row) {
+            if (row != null) {
+<#list type.lazyLoadedProperties as pd>
+                super.${pd.setterName}(row.${pd.getterName}());
+</#list>
+            }
+            loaded = true;
+        }
+
+        @Override
+        public boolean isLoaded() {
+            return loaded;
+        }
+
+        private void ensureLoaded() {
+            if (!loaded) {
+                batch.load();
+            }
+        }
+<#list type.lazyLoadedProperties as pd>
+
+        @Override
+        public ${pd.type} ${pd.getterName}() {
+            ensureLoaded();
+            return super.${pd.getterName}();
+        }
+
+        @Override
+        public void ${pd.setterName}(${pd.type} ${pd.name}) {
+            ensureLoaded();
+            super.${pd.setterName}(${pd.name});
+        }
+</#list>
+    }
+</#if>
+<#if type.dirtyTracked>
+
+    /**
+     * ${type.simpleName} created by the mappers, tracking the detail columns changed through its setters
+     */
+    public static class ${type.simpleName}Tracked extends ${type.simpleName} implements DirtyTracking {
+        private long dirtyColumns;
+
+        @Override
+        public long getDirtyColumns() {
+            return dirtyColumns;
+        }
+
+        @Override
+        public void clearDirtyColumns() {
+            dirtyColumns = 0;
+        }
+<#list type.detailColumnDetails as pd>
+
+        @Override
+        public void ${pd.setterName}(${pd.type} ${pd.name}) {
+<#if pd.type.kind.primitive>
+            if (super.${pd.getterName}() != ${pd.name}) {
+<#elseif pd.propertyType.name() == "MANY_TO_ONE">
+            if (!Objects.equals(super.${pd.getterName}() == null ? null : super.${pd.getterName}().${pd.referenceType.idDetails.getterName}(),
+                    ${pd.name} == null ? null : ${pd.name}.${pd.referenceType.idDetails.getterName}())) {
+<#else>
+            if (!Objects.deepEquals(super.${pd.getterName}(), ${pd.name})) {
+</#if>
+                dirtyColumns |= 1L << ${pd?index?c};
+            }
+            super.${pd.setterName}(${pd.name});
+        }
+</#list>
+    }
+</#if>
+<#if type.sharded><#assign idType = type.idDetails.boxedColumnTypeName><#assign idName = type.idDetails.name>
+
+    /**
+     * Dao storing the rows in several databases, the shard of a row is chosen by a hash of its id columns
+     */
+    public static class ${type.simpleName}ShardedDao extends ShardedDao<${idType}, ${type.simpleName}, ${type.simpleName}JdbcTemplate> {
+
+        @Override
+        protected ${type.simpleName}JdbcTemplate createShard() {
+            return new ${type.simpleName}JdbcTemplate();
+        }
+
+        @Override
+        protected int shardHash(${idType} ${idName}) {
+            return columnsHash(<#assign first = true><#list type.allIdDetails as pd><#if pd.nested || !pd.embedded><#if !first>, <#else><#assign first = false></#if><#if pd.nested>${pd.parentProperty}.${pd.getterName}()<#else>${pd.name}</#if></#if></#list>);
+        }
+
+        /**
+         * Get a row from its shard
+         * @param ${idName} the id
+         * @return the row, null if not found
+         */
+        public ${type.simpleName} getById(${idType} ${idName}) {
+            return getShard(${idName}).getById(${idName});
+        }
+
+        /**
+         * Get rows by id, querying the shards storing them in parallel
+         * @param ids the ids
+         * @return the rows found, by id, in the order of the given ids
+         */
+        public Map<${idType}, ${type.simpleName}> findByIds(Collection<${idType}> ids) {
+            final Map<${idType}, ${type.simpleName}> found = new HashMap<>();
+            onShards(ids, Function.identity(), ${type.simpleName}JdbcTemplate::findByIds).forEach(found::putAll);
+            final Map<${idType}, ${type.simpleName}> rows = new LinkedHashMap<>();
+            for (${idType} id : ids) {
+                final ${type.simpleName} row = found.get(id);
+                if (row != null) {
+                    rows.put(id, row);
+                }
+            }
+            return rows;
+        }
+
+        /**
+         * Get all rows, querying all shards in parallel
+         * @return the rows of all shards, shard by shard
+         */
+        public List<${type.simpleName}> findAll() {
+            final List<${type.simpleName}> rows = new ArrayList<>();
+            onAllShards(shard -> shard.findAll()).forEach(rows::addAll);
+            return rows;
+        }
+
+        /**
+         * Insert or update a row in its shard, in a transaction of the shard
+         * @param ${type.simpleName?lower_case} the row, with its id
+         * @return the row
+         */
+        public ${type.simpleName} merge(${type.simpleName} ${type.simpleName?lower_case}) {
+            return inShardTransaction(${type.simpleName?lower_case}.${type.idDetails.getterName}(), shard -> shard.merge(${type.simpleName?lower_case}));
+        }
+
+        /**
+         * Insert or update rows, merging them in their shards in parallel, in a transaction per shard
+         * @param ${type.simpleName?lower_case}s the rows, with their id
+         * @return the rows
+         */
+        public Collection<${type.simpleName}> mergeAll(Collection<${type.simpleName}> ${type.simpleName?lower_case}s) {
+            inShardTransactions(${type.simpleName?lower_case}s, ${type.simpleName}::${type.idDetails.getterName}, ${type.simpleName}JdbcTemplate::mergeAll);
+            return ${type.simpleName?lower_case}s;
+        }
+    }
+</#if>
 }
@@ -0,0 +1,23 @@
+package ${options.destinationPackage};
+// Generated by org.fylia.jappa.JappaProcessor
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.fylia.jappa.core.registry.EntityTemplate;
+import org.fylia.jappa.core.registry.TemplateRegistry;
+
+/**
+ * Generated registry of the templates of ${options.destinationPackage}, looked up through the ServiceLoader
+ */
+public class JappaTemplateRegistry implements TemplateRegistry {
+
+    @Override
+    public List<EntityTemplate<?>> getTemplates() {
+        return Arrays.asList(
+<#list types as type>
+                new EntityTemplate<>(${type.name}.class, ${type.simpleName}JdbcTemplate.class, <#if type.daoName??>${type.daoName}.class<#else>null</#if>,
+                        ${type.simpleName}JdbcTemplate.TABLENAME, <#if type.singleIdProperty>${type.idDetails.boxedColumnTypeName}<#else>Object</#if>.class, ${type.simpleName}JdbcTemplate::getPropertiesList)<#if type?has_next>,<#else>);</#if>
+</#list>
+    }
+}
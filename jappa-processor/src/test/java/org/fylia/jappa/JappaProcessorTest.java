@@ -44,7 +44,25 @@ public class JappaProcessorTest {
 		     .compilesWithoutError().and()
 		     .generatesFileNamed(
 		    		 javax.tools.StandardLocation.SOURCE_OUTPUT,"org.fylia.jappa.dao.impl", "ArticleJdbcTemplate.java")
+		     .and()
+		     .generatesFileNamed(
+		    		 javax.tools.StandardLocation.SOURCE_OUTPUT,"org.fylia.jappa.dao.impl", "JappaTemplateRegistry.java")
+		     .and()
+		     .generatesFileNamed(
+		    		 javax.tools.StandardLocation.CLASS_OUTPUT,"", "META-INF/services/org.fylia.jappa.core.registry.TemplateRegistry")
 		     /*.and()
 		     .generatesSources(supplierDestinationObject, articleDestinationObject)*/;
 	}
+
+	@Test
+	public void testColumnTypes() throws IOException {
+		JavaFileObject fileObject = JavaFileObjects.forResource("org/fylia/jappa/model/Delivery.java");
+		Truth.assertAbout(JavaSourceSubjectFactory.javaSource())
+		     .that(fileObject)
+		     .withCompilerOptions("-AdestinationPackage=org.fylia.jappa.dao.impl")
+		     .processedWith(new JappaProcessor())
+		     .compilesWithoutError().and()
+		     .generatesFileNamed(
+		    		 javax.tools.StandardLocation.SOURCE_OUTPUT,"org.fylia.jappa.dao.impl", "DeliveryJdbcTemplate.java");
+	}
 }
@@ -0,0 +1,137 @@
+package org.fylia.jappa.model;
+
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.util.Date;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.EnumType;
+import javax.persistence.Enumerated;
+import javax.persistence.Id;
+import javax.persistence.Table;
+
+@Entity
+@Table(name="delivery")
+public class Delivery {
+	public enum Status { PLANNED, SHIPPED, DELIVERED }
+
+	@Id
+	@Column(name="idDelivery")
+	private long id;
+	@Column
+	private int quantity;
+	@Column
+	private Long weight;
+	@Column
+	private Double volume;
+	@Column
+	private Boolean fragile;
+	@Column
+	private LocalDate deliveryDate;
+	@Column
+	private LocalTime deliveryTime;
+	@Column
+	private LocalDateTime registered;
+	@Column
+	private Instant shipped;
+	@Column
+	private Date created;
+	@Column
+	private Timestamp modified;
+	@Column
+	private Status status;
+	@Column
+	@Enumerated(EnumType.STRING)
+	private Status previousStatus;
+	@Column
+	private byte[] signature;
+
+	public long getId() {
+		return id;
+	}
+	public void setId(long id) {
+		this.id = id;
+	}
+	public int getQuantity() {
+		return quantity;
+	}
+	public void setQuantity(int quantity) {
+		this.quantity = quantity;
+	}
+	public Long getWeight() {
+		return weight;
+	}
+	public void setWeight(Long weight) {
+		this.weight = weight;
+	}
+	public Double getVolume() {
+		return volume;
+	}
+	public void setVolume(Double volume) {
+		this.volume = volume;
+	}
+	public Boolean getFragile() {
+		return fragile;
+	}
+	public void setFragile(Boolean fragile) {
+		this.fragile = fragile;
+	}
+	public LocalDate getDeliveryDate() {
+		return deliveryDate;
+	}
+	public void setDeliveryDate(LocalDate deliveryDate) {
+		this.deliveryDate = deliveryDate;
+	}
+	public LocalTime getDeliveryTime() {
+		return deliveryTime;
+	}
+	public void setDeliveryTime(LocalTime deliveryTime) {
+		this.deliveryTime = deliveryTime;
+	}
+	public LocalDateTime getRegistered() {
+		return registered;
+	}
+	public void setRegistered(LocalDateTime registered) {
+		this.registered = registered;
+	}
+	public Instant getShipped() {
+		return shipped;
+	}
+	public void setShipped(Instant shipped) {
+		this.shipped = shipped;
+	}
+	public Date getCreated() {
+		return created;
+	}
+	public void setCreated(Date created) {
+		this.created = created;
+	}
+	public Timestamp getModified() {
+		return modified;
+	}
+	public void setModified(Timestamp modified) {
+		this.modified = modified;
+	}
+	public Status getStatus() {
+		return status;
+	}
+	public void setStatus(Status status) {
+		this.status = status;
+	}
+	public Status getPreviousStatus() {
+		return previousStatus;
+	}
+	public void setPreviousStatus(Status previousStatus) {
+		this.previousStatus = previousStatus;
+	}
+	public byte[] getSignature() {
+		return signature;
+	}
+	public void setSignature(byte[] signature) {
+		this.signature = signature;
+	}
+}
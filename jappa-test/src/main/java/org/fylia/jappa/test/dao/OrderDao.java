@@ -0,0 +1,11 @@
+package org.fylia.jappa.test.dao;
+
+import org.fylia.jappa.test.dao.impl.OrderJdbcTemplate;
+import org.springframework.stereotype.Component;
+
+/**
+ * @author fylia
+ */
+@Component
+public class OrderDao extends OrderJdbcTemplate {
+}
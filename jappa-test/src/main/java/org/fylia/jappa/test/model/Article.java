@@ -10,12 +10,17 @@ import javax.persistence.Id;
 import javax.persistence.JoinColumn;
 import javax.persistence.ManyToOne;
 import javax.persistence.Table;
+import javax.persistence.TableGenerator;
+
+import org.fylia.jappa.core.cache.Cached;
 
 @Entity
+@Cached(maxSize=100)
 @Table(name="article")
 public class Article {
 	@Id
-	@GeneratedValue(strategy=GenerationType.AUTO)
+	@GeneratedValue(strategy=GenerationType.TABLE, generator="articleIds")
+	@TableGenerator(name="articleIds", pkColumnValue="article", initialValue=100, allocationSize=20)
 	@Column(name="idArticle")
 	private Integer id;
 	
@@ -8,23 +8,23 @@ import javax.persistence.GeneratedValue;
 import javax.persistence.GenerationType;
 import javax.persistence.Id;
 import javax.persistence.OneToMany;
+import javax.persistence.SequenceGenerator;
 import javax.persistence.Table;
 
 @Entity
-@Table(name="order")
+@Table(name="orders")
 public class Order {
 	@Id
-	@GeneratedValue(strategy=GenerationType.AUTO)
+	@GeneratedValue(strategy=GenerationType.SEQUENCE, generator="orderSequence")
+	@SequenceGenerator(name="orderSequence", sequenceName="orders_seq", allocationSize=10)
 	@Column(name="id")
 	private Integer id;
 	
 	@Column
 	private String code;
 
-	/*
 	@OneToMany(mappedBy="order")
 	private List<OrderItem> orderItems;
-	*/
 	
 	public Integer getId() {
 		return id;
@@ -34,14 +34,12 @@ public class Order {
 		this.id = id;
 	}
 
-	/*
 	public List<OrderItem> getOrderItems() {
 		return orderItems;
 	}
 	public void setOrderItems(List<OrderItem> orderItems) {
 		this.orderItems = orderItems;
 	}
-	*/
 
 	public String getCode() {
 		return code;
@@ -4,11 +4,15 @@ import javax.persistence.AttributeOverride;
 import javax.persistence.Column;
 import javax.persistence.EmbeddedId;
 import javax.persistence.Entity;
+import javax.persistence.FetchType;
 import javax.persistence.JoinColumn;
 import javax.persistence.ManyToOne;
 import javax.persistence.Table;
 
+import org.fylia.jappa.core.shard.Sharded;
+
 @Entity
+@Sharded
 @Table(name="orderItem")
 public class OrderItem {
     @EmbeddedId
@@ -19,7 +23,7 @@ public class OrderItem {
 	@JoinColumn(name="orderId", nullable=false, updatable=false)
     private Order order;
     
-    @ManyToOne 
+    @ManyToOne(fetch=FetchType.LAZY)
 	@JoinColumn(name="artId", nullable=false, updatable=false)
     private Article article;
     
@@ -1,6 +1,7 @@
 package org.fylia.jappa.test.model;
 
 import java.io.Serializable;
+import java.util.Objects;
 
 import javax.persistence.Column;
 import javax.persistence.Embeddable;
@@ -25,5 +26,20 @@ public class OrderItemId implements Serializable {
 	public void setOrderId(Integer orderId) {
 		this.orderId = orderId;
 	}
+	
+	@Override
+	public boolean equals(Object obj) {
+		if (this == obj) {
+			return true;
+		}
+		if (!(obj instanceof OrderItemId)) {
+			return false;
+		}
+		final OrderItemId other = (OrderItemId) obj;
+		return Objects.equals(articleId, other.articleId) && Objects.equals(orderId, other.orderId);
+	}
+	@Override
+	public int hashCode() {
+		return Objects.hash(articleId, orderId);
+	}
 }
-
@@ -5,7 +5,10 @@ import javax.persistence.Entity;
 import javax.persistence.Id;
 import javax.persistence.Table;
 
+import org.fylia.jappa.core.cache.ReferenceData;
+
 @Entity
+@ReferenceData
 @Table(name="suppliers")
 public class Supplier {
 	@Id
@@ -5,6 +5,7 @@ import java.sql.SQLException;
 
 import javax.sql.DataSource;
 
+import org.fylia.jappa.core.cache.LruEntityCacheProvider;
 import org.fylia.jappa.test.util.DbUnitUtil;
 import org.junit.Before;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -20,6 +21,8 @@ import org.springframework.test.context.junit4.AbstractJUnit4SpringContextTests;
 public abstract class AbstractDaoTest  extends AbstractJUnit4SpringContextTests {
     @Autowired
     private DataSource dataSource;
+    @Autowired
+    private LruEntityCacheProvider entityCacheProvider;
 
 
     /**
@@ -31,5 +34,6 @@ public abstract class AbstractDaoTest  extends AbstractJUnit4SpringContextTests
     public void setup() throws IOException, SQLException {
         DbUnitUtil.clearDb(dataSource);
         DbUnitUtil.fillDb(dataSource);
+        entityCacheProvider.clearAll();
     }
 }
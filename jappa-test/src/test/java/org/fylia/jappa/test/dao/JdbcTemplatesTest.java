@@ -1,17 +1,91 @@
 package org.fylia.jappa.test.dao;
 
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.Proxy;
+import java.math.BigDecimal;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.LongStream;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
+import javax.sql.DataSource;
+
+import org.fylia.jappa.core.ColumnIndexResolver;
+import org.fylia.jappa.core.IdRangeSpliterator;
+import org.fylia.jappa.core.PropertyDetail;
+import org.fylia.jappa.core.cache.CacheStatistics;
+import org.fylia.jappa.core.cache.LruEntityCacheProvider;
+import org.fylia.jappa.core.dialect.Dialect;
+import org.fylia.jappa.core.proxy.DirtyTracking;
+import org.fylia.jappa.core.proxy.LazyReference;
+import org.fylia.jappa.core.proxy.SafeGetterProxyFactory;
+import org.fylia.jappa.core.proxy.SafeGetterProxyFactory.NotSetPropertyException;
+import org.fylia.jappa.core.registry.EntityTemplate;
+import org.fylia.jappa.core.registry.Templates;
+import org.fylia.jappa.test.dao.impl.ArticleJdbcTemplate;
+import org.fylia.jappa.test.dao.impl.ArticleJdbcTemplate.Property;
+import org.fylia.jappa.test.dao.impl.CustomerJdbcTemplate;
+import org.fylia.jappa.test.dao.impl.OrderItemJdbcTemplate;
+import org.fylia.jappa.test.dao.impl.OrderItemJdbcTemplate.OrderItemShardedDao;
 import org.fylia.jappa.test.model.Article;
+import org.fylia.jappa.test.model.Customer;
+import org.fylia.jappa.test.model.Order;
+import org.fylia.jappa.test.model.OrderItem;
+import org.fylia.jappa.test.model.OrderItemId;
 import org.fylia.jappa.test.model.Supplier;
+import org.fylia.jappa.test.util.DbUnitUtil;
 import org.junit.Assert;
+import org.junit.Before;
 import org.junit.Test;
+import org.springframework.aop.framework.ProxyFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.DelegatingDataSource;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.AnnotationTransactionAttributeSource;
+import org.springframework.transaction.interceptor.TransactionInterceptor;
+import org.springframework.transaction.support.TransactionTemplate;
 
 
 public class JdbcTemplatesTest extends AbstractDaoTest {
 	@Autowired
 	private ArticleDao articleDao;
+	@Autowired
+	private OrderItemDao orderItemDao;
+	@Autowired
+	private OrderDao orderDao;
+	@Autowired
+	private SupplierDao supplierDao;
+	@Autowired
+	private PlatformTransactionManager txManager;
+	@Autowired
+	private DataSource dataSource;
+
+	@Before
+	public void refreshReferenceData() {
+		supplierDao.refreshReferenceData();
+	}
 	@Test
 	public void testFill() {
 		List<Article> allArticles = articleDao.findAll();
@@ -49,5 +123,752 @@ public class JdbcTemplatesTest extends AbstractDaoTest {
 	public void testFindAllJoinSupplier() {
 		List<Article> allArticles = articleDao.findAllJoinSupplier();
 		Assert.assertEquals(6, allArticles.size());
+		Assert.assertEquals("Sup1", allArticles.get(0).getSupplier().getSupplier());
+	}
+
+	@Test
+	public void testGetByIdFetch() {
+		Article article = articleDao.getByIdFetchSupplier(2);
+		Assert.assertEquals("art2", article.getCode());
+		Assert.assertEquals("Sup1", article.getSupplier().getSupplier());
+		Assert.assertNull(articleDao.getByIdFetchSupplier(99));
+
+		OrderItem item = orderItemDao.getByIdFetchArticle(orderItemId(3, 2));
+		Assert.assertEquals("art3", item.getArticle().getCode());
+	}
+
+	@Test
+	public void testMergeAll() {
+		int batchSize = articleDao.getBatchSize();
+		articleDao.setBatchSize(2);
+		try {
+			Supplier supplier = new Supplier();
+			supplier.setId(2);
+			List<Article> articles = new ArrayList<>();
+			for (int i=0; i<5; i++) {
+				Article article = new Article();
+				article.setCode("batch"+i);
+				article.setSupplier(supplier);
+				articles.add(article);
+			}
+			Article existing = articleDao.getById(1);
+			existing.setCode("updated");
+			articles.add(existing);
+
+			articleDao.mergeAll(articles);
+
+			Assert.assertEquals(11, articleDao.findAll().size());
+			for (Article article : articles) {
+				Assert.assertNotNull(article.getId());
+				Article loaded = articleDao.getById(article.getId());
+				Assert.assertEquals(article.getCode(), loaded.getCode());
+				Assert.assertEquals(article.getSupplier().getId(), loaded.getSupplier().getId());
+			}
+		} finally {
+			articleDao.setBatchSize(batchSize);
+		}
+	}
+
+	@Test
+	public void testStreamAll() {
+		int fetchSize = articleDao.getFetchSize();
+		articleDao.setFetchSize(2);
+		try {
+			try (Stream<Article> articles = articleDao.streamAll()) {
+				Assert.assertEquals(6, articles.count());
+			}
+			try (Stream<Article> articles = articleDao.streamAll()) {
+				Assert.assertEquals("art1", articles.findFirst().get().getCode());
+			}
+			try (Stream<Article> articles = articleDao.streamAllJoinSupplier()) {
+				List<String> suppliers = articles.map(a->a.getSupplier().getSupplier()).distinct().collect(Collectors.toList());
+				Assert.assertEquals(1, suppliers.size());
+				Assert.assertEquals("Sup1", suppliers.get(0));
+			}
+		} finally {
+			articleDao.setFetchSize(fetchSize);
+		}
+	}
+
+	@Test
+	public void testStreamAllThroughTransactionalProxy() throws IOException, SQLException {
+		DataSource shared = new DriverManagerDataSource("jdbc:h2:mem:proxied;DB_CLOSE_DELAY=-1");
+		DbUnitUtil.clearDb(shared);
+		DbUnitUtil.fillDb(shared);
+		PlatformTransactionManager sharedTxManager = new DataSourceTransactionManager(shared);
+		ArticleDao target = new ArticleDao();
+		target.setDataSource(shared);
+		ProxyFactory proxyFactory = new ProxyFactory(target);
+		proxyFactory.setProxyTargetClass(true);
+		proxyFactory.addAdvice(new TransactionInterceptor(sharedTxManager, new AnnotationTransactionAttributeSource()));
+		ArticleDao dao = (ArticleDao) proxyFactory.getProxy();
+		// the streams are read after the proxied method returned
+		try (Stream<Article> articles = dao.streamAll()) {
+			Assert.assertEquals(6, articles.count());
+		}
+		try (Stream<Article> articles = dao.streamAllJoinSupplier()) {
+			Assert.assertEquals(6, articles.filter(a -> a.getSupplier().getSupplier() != null).count());
+		}
+		// in a running transaction the stream reads on its connection, and sees its writes
+		long count = new TransactionTemplate(sharedTxManager).execute(status -> {
+			Article article = new Article();
+			article.setCode("streamed");
+			dao.merge(article);
+			try (Stream<Article> articles = dao.streamAll()) {
+				return articles.count();
+			}
+		});
+		Assert.assertEquals(7, count);
+	}
+
+	@Test
+	public void testFindPageAfter() {
+		List<Article> page = articleDao.findFirstPage(4);
+		Assert.assertEquals(4, page.size());
+		Assert.assertEquals(1, page.get(0).getId().intValue());
+		page = articleDao.findPageAfter(page.get(3).getId(), 4);
+		Assert.assertEquals(2, page.size());
+		Assert.assertEquals(5, page.get(0).getId().intValue());
+		page = articleDao.findPageAfter(page.get(1).getId(), 4);
+		Assert.assertTrue(page.isEmpty());
+
+		List<OrderItem> items = orderItemDao.findFirstPage(2);
+		Assert.assertEquals(2, items.size());
+		items = orderItemDao.findPageAfter(items.get(1).getId(), 2);
+		Assert.assertEquals(2, items.size());
+		Assert.assertEquals(2, items.get(0).getId().getArticleId().intValue());
+		Assert.assertEquals(1, items.get(0).getId().getOrderId().intValue());
+		Assert.assertEquals(3, items.get(1).getId().getArticleId().intValue());
+		Assert.assertEquals(1, items.get(1).getId().getOrderId().intValue());
+		items = orderItemDao.findPageAfter(items.get(1).getId(), 2);
+		Assert.assertEquals(1, items.size());
+		Assert.assertEquals(2, items.get(0).getId().getOrderId().intValue());
+	}
+
+	@Test
+	public void testFindByIds() {
+		Map<Integer, Article> articles = articleDao.findByIds(Arrays.asList(5, 2, 99, 2, 6, 1, 3));
+		Assert.assertEquals(Arrays.asList(5, 2, 6, 1, 3), new ArrayList<>(articles.keySet()));
+		for (Map.Entry<Integer, Article> entry : articles.entrySet()) {
+			Assert.assertEquals(entry.getKey(), entry.getValue().getId());
+		}
+		List<Integer> manyIds = new ArrayList<>();
+		for (int i=300; i>0; i--) {
+			manyIds.add(i);
+		}
+		Assert.assertEquals(Arrays.asList(6, 5, 4, 3, 2, 1), new ArrayList<>(articleDao.findByIds(manyIds).keySet()));
+
+		Map<OrderItemId, OrderItem> items = orderItemDao.findByIds(Arrays.asList(orderItemId(3, 2), orderItemId(1, 1), orderItemId(2, 2)));
+		Assert.assertEquals(Arrays.asList(orderItemId(3, 2), orderItemId(1, 1)), new ArrayList<>(items.keySet()));
+		Assert.assertEquals(orderItemId(3, 2), items.get(orderItemId(3, 2)).getId());
+	}
+
+	@Test
+	public void testFetchReferences() {
+		List<Article> articles = articleDao.fetchReferences(articleDao.findAll(), "supplier");
+		Assert.assertEquals(6, articles.size());
+		Supplier supplier = articles.get(0).getSupplier();
+		Assert.assertEquals("Sup1", supplier.getSupplier());
+		for (Article article : articles) {
+			Assert.assertSame(supplier, article.getSupplier());
+		}
+
+		List<OrderItem> items = orderItemDao.fetchReferences(orderItemDao.findAll(), "article");
+		Assert.assertEquals("art3", items.get(4).getArticle().getCode());
+		Assert.assertSame(items.get(3).getArticle(), items.get(4).getArticle());
+		try {
+			articleDao.fetchReferences(articles, "code");
+			Assert.fail("code is not a reference");
+		} catch (IllegalArgumentException e) {
+			// expected
+		}
+	}
+
+	@Test
+	public void testFetchOneToMany() {
+		List<Order> orders = orderDao.findAllFetchOrderItems();
+		Assert.assertEquals(3, orders.size());
+		for (Order order : orders) {
+			for (OrderItem item : order.getOrderItems()) {
+				Assert.assertEquals(order.getId(), item.getOrder().getId());
+			}
+		}
+		Assert.assertEquals(3, orders.get(0).getOrderItems().size());
+		Assert.assertEquals(2, orders.get(1).getOrderItems().size());
+		Assert.assertTrue(orders.get(2).getOrderItems().isEmpty());
+
+		Map<Integer, List<OrderItem>> items = orderItemDao.findByOrderIds(Arrays.asList(2, 1));
+		Assert.assertEquals(Arrays.asList(2, 1), new ArrayList<>(items.keySet()));
+		Assert.assertEquals(3, items.get(1).size());
+	}
+
+	@Test
+	public void testIdentityMap() {
+		Assert.assertNotSame(articleDao.getById(1), articleDao.getById(1));
+		articleDao.setIdentityMapEnabled(true);
+		try {
+			new TransactionTemplate(txManager).execute(status -> {
+				Article article = articleDao.getById(1);
+				Assert.assertSame(article, articleDao.getById(1));
+				List<Article> articles = articleDao.findAll();
+				Assert.assertSame(article, articles.get(0));
+				Assert.assertSame(articles.get(0).getSupplier(), articles.get(1).getSupplier());
+
+				Article other = articleDao.getById(2);
+				other.setCode("changed");
+				articleDao.update(other);
+				Assert.assertSame(other, articleDao.getById(2));
+				return null;
+			});
+			new TransactionTemplate(txManager).execute(status -> {
+				Assert.assertEquals("changed", articleDao.getById(2).getCode());
+				return null;
+			});
+			Assert.assertNotSame(articleDao.getById(1), articleDao.getById(1));
+		} finally {
+			articleDao.setIdentityMapEnabled(false);
+		}
+	}
+
+	@Test
+	public void testSecondLevelCache() {
+		CacheStatistics statistics = articleDao.getCacheStatistics();
+		long hits = statistics.getHitCount();
+		Article article = articleDao.getById(3);
+		Article cached = articleDao.getById(3);
+		Assert.assertEquals(hits + 1, statistics.getHitCount());
+		Assert.assertNotSame(article, cached);
+		Assert.assertEquals(article.getCode(), cached.getCode());
+
+		cached.setCode("changed");
+		Assert.assertEquals("art3", articleDao.getById(3).getCode());
+		articleDao.update(cached);
+		Assert.assertEquals("changed", articleDao.getById(3).getCode());
+
+		hits = statistics.getHitCount();
+		Map<Integer, Article> articles = articleDao.findByIds(Arrays.asList(4, 3));
+		Assert.assertEquals(Arrays.asList(4, 3), new ArrayList<>(articles.keySet()));
+		Assert.assertEquals("changed", articles.get(3).getCode());
+		Assert.assertEquals(hits + 1, statistics.getHitCount());
+		Assert.assertEquals("art4", articleDao.getById(4).getCode());
+		Assert.assertEquals(hits + 2, statistics.getHitCount());
+	}
+
+	@Test
+	public void testSecondLevelCacheInTransaction() {
+		CacheStatistics statistics = articleDao.getCacheStatistics();
+		articleDao.getById(2);
+		long misses = statistics.getMissCount();
+		new TransactionTemplate(txManager).execute(status -> {
+			Article article = articleDao.getById(2);
+			article.setCode("uncommitted");
+			articleDao.update(article);
+			// the rows read after the write are not cached, they are not committed yet
+			Assert.assertEquals("uncommitted", articleDao.getById(2).getCode());
+			Assert.assertEquals("uncommitted", articleDao.getById(2).getCode());
+			status.setRollbackOnly();
+			return null;
+		});
+		Assert.assertEquals(misses + 2, statistics.getMissCount());
+		Assert.assertEquals("art2", articleDao.getById(2).getCode());
+	}
+
+	@Test
+	public void testDefaultEntityCacheProvider() {
+		DataSource other = new DriverManagerDataSource("jdbc:h2:mem:cached;DB_CLOSE_DELAY=-1");
+		ArticleDao dao = new ArticleDao();
+		dao.setDataSource(dataSource);
+		ArticleDao sameDataSource = new ArticleDao();
+		sameDataSource.setDataSource(dataSource);
+		ArticleDao otherDataSource = new ArticleDao();
+		otherDataSource.setDataSource(other);
+		// the daos of a dataSource share their caches, the daos of another database do not
+		Assert.assertSame(dao.getEntityCacheProvider(), sameDataSource.getEntityCacheProvider());
+		Assert.assertNotSame(dao.getEntityCacheProvider(), otherDataSource.getEntityCacheProvider());
+	}
+
+	@Test
+	public void testReferenceData() {
+		Supplier supplier = supplierDao.getById(1);
+		Assert.assertEquals("Sup1", supplier.getSupplier());
+		Assert.assertSame(supplier, supplierDao.getById(1));
+		Assert.assertEquals(2, supplierDao.findAll().size());
+		Assert.assertSame(supplier, supplierDao.findByIds(Arrays.asList(1)).get(1));
+		Assert.assertSame(supplier, articleDao.findAll().get(0).getSupplier());
+
+		new JdbcTemplate(dataSource).update("insert into suppliers(idSuppliers, supplier) values (3, 'Third')");
+		Assert.assertNull(supplierDao.getById(3));
+		supplierDao.refreshReferenceData();
+		Assert.assertEquals("Third", supplierDao.getById(3).getSupplier());
+		Assert.assertNotSame(supplier, supplierDao.getById(1));
+
+		Supplier third = supplierDao.getById(3);
+		third.setSupplier("Changed");
+		supplierDao.update(third);
+		Assert.assertEquals(3, supplierDao.findAll().size());
+		Assert.assertEquals("Changed", supplierDao.getById(3).getSupplier());
+	}
+
+	@Test
+	public void testSafeGetterProxy() {
+		Article article = SafeGetterProxyFactory.createProxy(Article.class);
+		Assert.assertTrue(article instanceof ArticleJdbcTemplate.ArticleSafeGetterProxy);
+		Assert.assertEquals(Article.class, SafeGetterProxyFactory.getClass(article));
+		try {
+			article.getCode();
+			Assert.fail("getter called before the setter");
+		} catch (NotSetPropertyException e) {
+			Assert.assertTrue(e.getMessage().contains("getCode"));
+		}
+		article.setCode(null);
+		Assert.assertNull(article.getCode());
+		article.setDescriptionNl("description");
+		Assert.assertEquals("description", article.getDescriptionNl());
+		Assert.assertFalse(article.isActive());
+	}
+
+	@Test
+	public void testSafeGetterProxyBeforeTemplateLoaded() throws Exception {
+		// a class loader of its own, in which no template is loaded yet
+		final List<URL> urls = new ArrayList<>();
+		for (String path : System.getProperty("java.class.path").split(File.pathSeparator)) {
+			urls.add(new File(path).toURI().toURL());
+		}
+		try (URLClassLoader loader = new URLClassLoader(urls.toArray(new URL[urls.size()]), null)) {
+			final Class<?> entityClass = Class.forName(Article.class.getName(), false, loader);
+			final Class<?> factoryClass = Class.forName(SafeGetterProxyFactory.class.getName(), false, loader);
+			final Object article = factoryClass.getMethod("createProxy", Class.class).invoke(null, entityClass);
+			Assert.assertEquals(ArticleJdbcTemplate.ArticleSafeGetterProxy.class.getName(), article.getClass().getName());
+			Assert.assertSame(loader, article.getClass().getClassLoader());
+		}
+	}
+
+	@Test
+	public void testProjection() {
+		List<Article> articles = articleDao.findAll(EnumSet.of(Property.CODE, Property.CATALOGUEPRICE));
+		Assert.assertEquals(articleDao.findAll().size(), articles.size());
+		Article article = articles.stream().filter(a -> a.getId() == 1).findFirst().get();
+		Assert.assertEquals("art1", article.getCode());
+		Assert.assertEquals(0, new BigDecimal("12.47").compareTo(article.getCataloguePrice()));
+		try {
+			article.getDescriptionNl();
+			Assert.fail("description not loaded");
+		} catch (NotSetPropertyException e) {
+			Assert.assertTrue(e.getMessage().contains("getDescriptionNl"));
+		}
+
+		article = articleDao.getById(2, EnumSet.of(Property.SUPPLIER));
+		Assert.assertEquals(Integer.valueOf(1), article.getSupplier().getId());
+		try {
+			article.getCode();
+			Assert.fail("code not loaded");
+		} catch (NotSetPropertyException e) {
+			Assert.assertTrue(e.getMessage().contains("getCode"));
+		}
+		Assert.assertNull(articleDao.getById(999, EnumSet.noneOf(Property.class)));
+	}
+
+	@Test
+	public void testLazyReferences() {
+		CacheStatistics statistics = articleDao.getCacheStatistics();
+		long misses = statistics.getMissCount();
+		List<OrderItem> items = orderItemDao.findAll();
+		Assert.assertEquals(5, items.size());
+		for (OrderItem item : items) {
+			Assert.assertTrue(item.getArticle() instanceof LazyReference);
+			Assert.assertFalse(((LazyReference<?>) item.getArticle()).isLoaded());
+		}
+		Assert.assertEquals(Integer.valueOf(3), items.get(3).getArticle().getId());
+		Assert.assertFalse(((LazyReference<?>) items.get(3).getArticle()).isLoaded());
+
+		Assert.assertEquals("art3", items.get(3).getArticle().getCode());
+		for (OrderItem item : items) {
+			Assert.assertTrue(((LazyReference<?>) item.getArticle()).isLoaded());
+			Assert.assertEquals("art" + item.getArticle().getId(), item.getArticle().getCode());
+		}
+		// the three distinct articles were read through the cache in one batch
+		Assert.assertEquals(misses + 3, statistics.getMissCount());
+	}
+
+	@Test
+	public void testLazyReferencesLoadedByTheirDao() throws IOException, SQLException {
+		DataSource other = new DriverManagerDataSource("jdbc:h2:mem:lazy;DB_CLOSE_DELAY=-1");
+		DbUnitUtil.clearDb(other);
+		DbUnitUtil.fillDb(other);
+		new JdbcTemplate(other).update("update article set code = 'other' || code");
+		OrderItemDao otherDao = new OrderItemDao();
+		otherDao.setEntityCacheProvider(new LruEntityCacheProvider());
+		otherDao.setDataSource(other);
+		ArticleDao otherArticleDao = new ArticleDao();
+		otherArticleDao.setDataSource(other);
+		// each dao loads its lazy references with its own dataSource, whichever dao was initialized last
+		Assert.assertEquals("art3", orderItemDao.getById(orderItemId(3, 2)).getArticle().getCode());
+		Assert.assertEquals("otherart3", otherDao.getById(orderItemId(3, 2)).getArticle().getCode());
+	}
+
+	@Test
+	public void testDirtyTracking() {
+		JdbcTemplate jdbcTemplate = new JdbcTemplate(dataSource);
+		Article article = articleDao.getById(1);
+		Assert.assertEquals(0, ((DirtyTracking) article).getDirtyColumns());
+		article.setCode("art1");
+		Assert.assertEquals(0, ((DirtyTracking) article).getDirtyColumns());
+
+		// columns that did not change are not written
+		jdbcTemplate.update("update article set descriptionNl = 'changed' where idArticle = 1");
+		article.setActive(false);
+		Assert.assertNotEquals(0, ((DirtyTracking) article).getDirtyColumns());
+		articleDao.update(article);
+		Assert.assertEquals(0, ((DirtyTracking) article).getDirtyColumns());
+		Assert.assertEquals("changed", jdbcTemplate.queryForObject("select descriptionNl from article where idArticle = 1", String.class));
+		Assert.assertFalse(jdbcTemplate.queryForObject("select active from article where idArticle = 1", Boolean.class));
+
+		// nothing is written without changes
+		jdbcTemplate.update("update article set active = true where idArticle = 1");
+		articleDao.updateAll(Arrays.asList(article));
+		Assert.assertTrue(jdbcTemplate.queryForObject("select active from article where idArticle = 1", Boolean.class));
+
+		// instances that are not tracked are fully written
+		Article copy = new Article();
+		copy.setId(1);
+		copy.setCode("new");
+		copy.setSupplier(article.getSupplier());
+		articleDao.update(copy);
+		Assert.assertNull(jdbcTemplate.queryForObject("select descriptionNl from article where idArticle = 1", String.class));
+	}
+
+	@Test
+	public void testAllocatedIds() {
+		JdbcTemplate jdbcTemplate = new JdbcTemplate(dataSource);
+		List<Order> orders = new ArrayList<>();
+		for (int i=0; i<12; i++) {
+			Order order = new Order();
+			order.setCode("seq"+i);
+			orders.add(order);
+		}
+		orderDao.insertAll(orders);
+		Assert.assertEquals(orders.size(), orders.stream().map(Order::getId).distinct().count());
+		for (Order order : orders) {
+			Assert.assertTrue(order.getId() >= 100);
+			Assert.assertEquals(order.getCode(), orderDao.getById(order.getId()).getCode());
+		}
+		Order single = new Order();
+		single.setCode("single");
+		orderDao.insert(single);
+		Assert.assertEquals("single", orderDao.getById(single.getId()).getCode());
+
+		Article article = new Article();
+		article.setCode("table");
+		Supplier supplier = new Supplier();
+		supplier.setId(1);
+		article.setSupplier(supplier);
+		// a new dao, the ids reserved by the shared one outlive the database recreated for each test
+		ArticleDao dao = new ArticleDao();
+		dao.setDataSource(dataSource);
+		dao.insert(article);
+		Assert.assertTrue(article.getId() > 100);
+		Assert.assertEquals("table", dao.getById(article.getId()).getCode());
+		// a block of 20 ids is reserved at once in the generator table
+		Long reserved = jdbcTemplate.queryForObject("select next_val from id_sequences where sequence_name = 'article'", Long.class);
+		Assert.assertTrue(article.getId() <= reserved && reserved - article.getId() < 20);
+	}
+
+	@Test
+	public void testUpsert() {
+		Assert.assertEquals(Dialect.H2, supplierDao.getDialect());
+		Supplier existing = new Supplier();
+		existing.setId(1);
+		existing.setSupplier("Merged");
+		Supplier created = new Supplier();
+		created.setId(5);
+		created.setSupplier("Created");
+		supplierDao.merge(existing);
+		supplierDao.mergeAll(Arrays.asList(created, existing));
+		Assert.assertEquals("Merged", supplierDao.getById(1).getSupplier());
+		Assert.assertEquals("Created", supplierDao.getById(5).getSupplier());
+		Assert.assertEquals(3, supplierDao.findAll().size());
+	}
+
+	@Test
+	public void testUpsertWithoutDetailColumns() {
+		// the references of an OrderItem are mapped on the columns of its id, only the id columns are written
+		Assert.assertEquals(0, OrderItemJdbcTemplate.DETAIL_COLUMN_COUNT);
+		int itemCount = orderItemDao.findAll().size();
+		OrderItem existing = orderItemDao.getById(orderItemId(3, 2));
+		OrderItem created = new OrderItem();
+		created.setId(orderItemId(6, 2));
+		orderItemDao.merge(existing);
+		orderItemDao.merge(created);
+		OrderItem batched = new OrderItem();
+		batched.setId(orderItemId(5, 2));
+		orderItemDao.mergeAll(Arrays.asList(batched, existing, created));
+		Assert.assertEquals(itemCount + 2, orderItemDao.findAll().size());
+		OrderItem loaded = orderItemDao.getById(orderItemId(6, 2));
+		Assert.assertEquals(Integer.valueOf(2), loaded.getOrder().getId());
+		Assert.assertEquals("4152.02", loaded.getArticle().getCode());
+		Assert.assertNotNull(orderItemDao.getById(orderItemId(5, 2)));
+	}
+
+	@Test
+	public void testPropertiesMetadata() {
+		Assert.assertEquals(ArticleJdbcTemplate.ID_COLUMN_LIST,
+				ArticleJdbcTemplate.getIdPropertiesList().stream().map(PropertyDetail::getColumnName).collect(Collectors.toList()));
+		Assert.assertEquals(ArticleJdbcTemplate.DETAIL_COLUMN_LIST,
+				ArticleJdbcTemplate.getDetailPropertiesList().stream().map(PropertyDetail::getColumnName).collect(Collectors.toList()));
+		Assert.assertEquals(ArticleJdbcTemplate.ID_COLUMN_COUNT + ArticleJdbcTemplate.DETAIL_COLUMN_COUNT,
+				ArticleJdbcTemplate.getPropertiesList().size());
+	}
+
+	@Test
+	public void testTemplateRegistry() {
+		EntityTemplate<Article> template = Templates.forEntity(Article.class);
+		Assert.assertEquals(ArticleJdbcTemplate.class, template.getTemplateClass());
+		Assert.assertEquals(ArticleDao.class, template.getDaoClass());
+		Assert.assertEquals("article", template.getTableName());
+		Assert.assertEquals(Integer.class, template.getIdType());
+		Assert.assertSame(ArticleJdbcTemplate.getPropertiesList(), template.getProperties());
+		Assert.assertEquals(OrderItemId.class, Templates.forEntity(OrderItem.class).getIdType());
+		Assert.assertSame(articleDao, applicationContext.getBean(template.getDaoClass()));
+	}
+
+	@Test
+	public void testReadDataSource() throws IOException, SQLException {
+		DataSource replica = new DriverManagerDataSource("jdbc:h2:mem:replica;DB_CLOSE_DELAY=-1");
+		DbUnitUtil.clearDb(replica);
+		DbUnitUtil.fillDb(replica);
+		OrderDao dao = new OrderDao();
+		dao.setDataSource(dataSource);
+		dao.setReadDataSource(replica);
+		int orderCount = dao.findAll().size();
+		Order order = new Order();
+		order.setCode("primary");
+		dao.insert(order);
+		// the replica does not see the write
+		Assert.assertNull(dao.getById(order.getId()));
+		Assert.assertEquals(orderCount, dao.findAll().size());
+		try (Stream<Order> orders = dao.streamAll()) {
+			Assert.assertEquals(orderCount, orders.count());
+		}
+		// a read-write transaction reads its own writes from the primary, a read-only one from the replica
+		TransactionTemplate transaction = new TransactionTemplate(txManager);
+		Assert.assertEquals("primary", transaction.execute(status -> dao.getById(order.getId())).getCode());
+		transaction.setReadOnly(true);
+		Assert.assertNull(transaction.execute(status -> dao.getById(order.getId())));
+		int itemCount = orderItemCount(dao.findAllFetchOrderItems());
+		new JdbcTemplate(dataSource).update("insert into orderItem (artId, orderId) values (?, ?)", 6, 1);
+		Assert.assertEquals(itemCount, orderItemCount(dao.findAllFetchOrderItems()));
+
+		// the daos loading the related rows follow the change too
+		dao.setReadDataSource(null);
+		Assert.assertEquals("primary", dao.getById(order.getId()).getCode());
+		Assert.assertEquals(itemCount + 1, orderItemCount(dao.findAllFetchOrderItems()));
+
+		// outside a transaction, the proxied reads do not check out a connection of the primary
+		AtomicInteger primaryConnections = new AtomicInteger();
+		DataSource primary = new DelegatingDataSource(dataSource) {
+			@Override
+			public Connection getConnection() throws SQLException {
+				primaryConnections.incrementAndGet();
+				return super.getConnection();
+			}
+		};
+		OrderDao target = new OrderDao();
+		target.setDataSource(primary);
+		target.setReadDataSource(replica);
+		ProxyFactory proxyFactory = new ProxyFactory(target);
+		proxyFactory.setProxyTargetClass(true);
+		proxyFactory.addAdvice(new TransactionInterceptor(new DataSourceTransactionManager(primary), new AnnotationTransactionAttributeSource()));
+		OrderDao proxied = (OrderDao) proxyFactory.getProxy();
+		Assert.assertNull(proxied.getById(order.getId()));
+		Assert.assertEquals(orderCount, proxied.findAll().size());
+		Assert.assertEquals(0, primaryConnections.get());
+	}
+
+	private static int orderItemCount(List<Order> orders) {
+		return orders.stream().mapToInt(o -> o.getOrderItems().size()).sum();
+	}
+
+	@Test
+	public void testShardedDao() throws IOException, SQLException {
+		List<DataSource> shards = new ArrayList<>();
+		for (int i=0; i<3; i++) {
+			DataSource shard = new DriverManagerDataSource("jdbc:h2:mem:shard"+i+";DB_CLOSE_DELAY=-1");
+			DbUnitUtil.clearDb(shard);
+			new JdbcTemplate(shard).update("delete from orderItem");
+			shards.add(shard);
+		}
+		OrderItemShardedDao dao = new OrderItemShardedDao();
+		dao.setDataSources(shards);
+		List<OrderItem> items = orderItemDao.findAll();
+		dao.mergeAll(items);
+		// merged again, the rows are updated, not inserted twice
+		dao.mergeAll(items);
+		int used = 0;
+		for (DataSource shard : shards) {
+			int count = new JdbcTemplate(shard).queryForObject("select count(*) from orderItem", Integer.class);
+			Assert.assertTrue(count < items.size());
+			used += count > 0 ? 1 : 0;
+		}
+		Assert.assertTrue(used > 1);
+		// the shard of a row does not depend on the run
+		Assert.assertEquals(Math.floorMod(31 * (31 + 3) + 2, 3), dao.getShardIndex(orderItemId(3, 2)));
+
+		Assert.assertEquals(items.size(), dao.findAll().size());
+		for (OrderItem item : items) {
+			Assert.assertEquals(item.getId(), dao.getById(item.getId()).getId());
+		}
+		Map<OrderItemId, OrderItem> found = dao.findByIds(Arrays.asList(orderItemId(3, 2), orderItemId(9, 9), orderItemId(1, 1), orderItemId(2, 2)));
+		Assert.assertEquals(Arrays.asList(orderItemId(3, 2), orderItemId(1, 1)), new ArrayList<>(found.keySet()));
+		Assert.assertNull(dao.getById(orderItemId(9, 9)));
+
+		OrderItem created = new OrderItem();
+		created.setId(orderItemId(6, 2));
+		dao.merge(created);
+		Assert.assertEquals(items.size() + 1, dao.findAll().size());
+		Assert.assertEquals(1, new JdbcTemplate(shards.get(dao.getShardIndex(created.getId())))
+				.queryForObject("select count(*) from orderItem where artId = 6 and orderId = 2", Integer.class).intValue());
+		try {
+			dao.getById(null);
+			Assert.fail("a sharded row needs an id");
+		} catch (IllegalArgumentException e) {
+			// expected
+		}
+	}
+
+	@Test
+	public void testParallelScan() throws IOException, SQLException {
+		// each partition is read on a connection of its own, so the database must be shared by the connections
+		DataSource shared = new DriverManagerDataSource("jdbc:h2:mem:scan;DB_CLOSE_DELAY=-1");
+		DbUnitUtil.clearDb(shared);
+		DbUnitUtil.fillDb(shared);
+		AtomicInteger queries = new AtomicInteger();
+		DataSource counting = new DelegatingDataSource(shared) {
+			@Override
+			public Connection getConnection() throws SQLException {
+				queries.incrementAndGet();
+				return super.getConnection();
+			}
+		};
+		ArticleDao dao = new ArticleDao();
+		dao.setDataSource(counting);
+		List<Integer> ids;
+		try (Stream<Article> articles = dao.parallelStreamAll(3)) {
+			Assert.assertTrue(articles.isParallel());
+			ids = articles.map(Article::getId).collect(Collectors.toList());
+		}
+		Assert.assertEquals(Arrays.asList(1, 2, 3, 4, 5, 6), ids);
+		// the min/max query and a query per partition
+		Assert.assertEquals(1 + 3, queries.getAndSet(0));
+		Queue<String> codes = new ConcurrentLinkedQueue<>();
+		dao.parallelScan(6, article -> codes.add(article.getCode()));
+		Assert.assertEquals(6, codes.size());
+		Assert.assertTrue(codes.contains("art3"));
+		Assert.assertEquals(1 + 6, queries.getAndSet(0));
+		// a short circuiting stream does not wait for the other partitions
+		try (Stream<Article> articles = dao.parallelStreamAll(2)) {
+			Assert.assertEquals(1, articles.findFirst().get().getId().intValue());
+		}
+		// the partitions would not see the writes of a running transaction
+		try {
+			new TransactionTemplate(new DataSourceTransactionManager(counting)).execute(status -> dao.parallelStreamAll(2));
+			Assert.fail("parallel scan in a transaction");
+		} catch (IllegalStateException e) {
+			// expected
+		}
+
+		Queue<long[]> ranges = new ConcurrentLinkedQueue<>();
+		long count = StreamSupport.stream(new IdRangeSpliterator<Long>(1, 100, 25, (from, to, action) -> {
+			ranges.add(new long[] {from, to});
+			LongStream.rangeClosed(from, to).forEach(action::accept);
+		}), true).count();
+		Assert.assertEquals(100, count);
+		Assert.assertEquals(4, ranges.size());
+		Assert.assertTrue(ranges.stream().allMatch(range -> range[1] - range[0] + 1 == 25));
+		Assert.assertEquals(3, new IdRangeSpliterator<Long>(1, 6, 2, (from, to, action) -> { }).splitRanges().size());
+
+		// ranges wider than Long.MAX_VALUE are split without overflowing
+		List<long[]> wideRanges = StreamSupport.stream(new IdRangeSpliterator<long[]>(Long.MIN_VALUE, Long.MAX_VALUE, 1L << 62,
+				(from, to, action) -> action.accept(new long[] {from, to})), true).collect(Collectors.toList());
+		Assert.assertEquals(4, wideRanges.size());
+		Assert.assertEquals(Long.MIN_VALUE, wideRanges.get(0)[0]);
+		for (int i=1; i<wideRanges.size(); i++) {
+			Assert.assertEquals(wideRanges.get(i-1)[1] + 1, wideRanges.get(i)[0]);
+		}
+		Assert.assertEquals(Long.MAX_VALUE, wideRanges.get(3)[1]);
+	}
+
+	@Test
+	public void testColumnIndexResolver() throws Exception {
+		ColumnIndexResolver resolver = new ColumnIndexResolver("a", "b");
+		ExecutorService executor = Executors.newFixedThreadPool(4);
+		try {
+			List<Future<Integer>> metaDataReads = new ArrayList<>();
+			for (int i=0; i<4; i++) {
+				metaDataReads.add(executor.submit(() -> alternateResultSets(resolver)));
+			}
+			// each thread resolves each of its ResultSets once, whatever the other threads read
+			for (Future<Integer> reads : metaDataReads) {
+				Assert.assertEquals(2, reads.get().intValue());
+			}
+		} finally {
+			executor.shutdown();
+		}
+	}
+
+	private static int alternateResultSets(ColumnIndexResolver resolver) throws SQLException {
+		AtomicInteger metaDataReads = new AtomicInteger();
+		try (Connection con = DriverManager.getConnection("jdbc:h2:mem:");
+				Statement first = con.createStatement(); Statement second = con.createStatement()) {
+			ResultSet ab = countingMetaData(first.executeQuery("select 1 as a, 2 as b"), metaDataReads);
+			ResultSet ba = countingMetaData(second.executeQuery("select 2 as b, 1 as a"), metaDataReads);
+			for (int i=0; i<100; i++) {
+				Assert.assertArrayEquals(new int[] {1, 2}, resolver.getColumnIndexes(ab));
+				Assert.assertArrayEquals(new int[] {2, 1}, resolver.getColumnIndexes(ba));
+			}
+		}
+		return metaDataReads.get();
+	}
+
+	private static ResultSet countingMetaData(ResultSet rs, AtomicInteger metaDataReads) {
+		return (ResultSet) Proxy.newProxyInstance(ColumnIndexResolver.class.getClassLoader(), new Class<?>[] {ResultSet.class},
+				(proxy, method, args) -> {
+					if (method.getName().equals("getMetaData")) {
+						metaDataReads.incrementAndGet();
+					}
+					return method.invoke(rs, args);
+				});
+	}
+
+	@Test
+	public void testGeneratedIds() {
+		// the ids of the customers are generated by an identity column, and read back from the generated keys
+		CustomerJdbcTemplate dao = new CustomerJdbcTemplate();
+		dao.setDataSource(dataSource);
+		dao.setBatchSize(2);
+		Customer single = new Customer();
+		single.setName("single");
+		dao.insert(single);
+		Assert.assertNotNull(single.getId());
+		List<Customer> customers = new ArrayList<>();
+		for (int i=0; i<5; i++) {
+			Customer customer = new Customer();
+			customer.setName("batch"+i);
+			customers.add(customer);
+		}
+		// 3 batches, the last one not full
+		dao.insertAll(customers);
+		Assert.assertEquals(customers.size(), customers.stream().map(Customer::getId).distinct().count());
+		for (Customer customer : customers) {
+			Assert.assertTrue(customer.getId() > single.getId());
+			Assert.assertEquals(customer.getName(), dao.getById(customer.getId()).getName());
+		}
+		Assert.assertEquals("single", dao.getById(single.getId()).getName());
+	}
+
+	private static OrderItemId orderItemId(int articleId, int orderId) {
+		OrderItemId id = new OrderItemId();
+		id.setArticleId(articleId);
+		id.setOrderId(orderId);
+		return id;
 	}
 }
@@ -10,4 +10,14 @@ INSERT INTO ARTICLE(idArticle, code, descriptionNl, descriptionFr, cataloguePric
 	(5, '1024.01','Francis Article nr 1', 'Article no 1 de Francis', 12.47, 50, 8, true, 1, 1),
 	(6, '4152.02','Francis Article nr 2', 'Article no 2 de Francis', 1.14, 18, 10, true, 0, 1);
 
+INSERT INTO ORDERS(id, code) VALUES
+	(1, 'order1'),
+	(2, 'order2'),
+	(3, 'order3');
 
+INSERT INTO ORDERITEM(artId, orderId) VALUES
+	(1, 1),
+	(1, 2),
+	(2, 1),
+	(3, 1),
+	(3, 2);
@@ -1,5 +1,10 @@
+DROP TABLE ORDERITEM IF EXISTS;
+DROP TABLE ORDERS IF EXISTS;
 DROP TABLE ARTICLE IF EXISTS;
 DROP TABLE SUPPLIERS IF EXISTS;
+DROP TABLE CUSTOMER IF EXISTS;
+DROP TABLE ID_SEQUENCES IF EXISTS;
+DROP SEQUENCE ORDERS_SEQ IF EXISTS;
 
 CREATE TABLE ARTICLE (
 	idArticle INT PRIMARY KEY AUTO_INCREMENT,
@@ -24,6 +29,30 @@ CREATE TABLE SUPPLIERS (
 	mail VARCHAR(256)
 );
 
+CREATE TABLE ORDERS (
+	id INT PRIMARY KEY AUTO_INCREMENT,
+	code VARCHAR(20)
+);
+
+CREATE TABLE CUSTOMER (
+	id INT PRIMARY KEY AUTO_INCREMENT,
+	name VARCHAR(20) NOT NULL,
+	address VARCHAR(256)
+);
+
+CREATE SEQUENCE ORDERS_SEQ START WITH 100 INCREMENT BY 10;
+
+CREATE TABLE ID_SEQUENCES (
+	sequence_name VARCHAR(64) PRIMARY KEY,
+	next_val BIGINT
+);
+
+CREATE TABLE ORDERITEM (
+	artId INT,
+	orderId INT,
+	PRIMARY KEY (artId, orderId)
+);
+
 CREATE INDEX I_ARTICLE_SUPPLIER_ID on ARTICLE (SUPPLIERID ASC);
 
 ALTER TABLE ARTICLE ADD CONSTRAINT F_ARTICLE_SUPPLIER FOREIGN KEY (SUPPLIERID)